@@ -0,0 +1,108 @@
+package data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs backups on a background thread.
+ *
+ * Manual and automatic backups share one thread, so they never overlap and
+ * pruning old backups never blocks the UI. Automatic backups run every
+ * backup.auto.interval minutes while backup.auto is true, and are skipped
+ * when no data file changed since the last one.
+ */
+public class BackupScheduler {
+    private static BackupScheduler instance;
+
+    private final ScheduledExecutorService executor;
+    private ScheduledFuture<?> autoBackup;
+    // Data files covered by the last automatic backup
+    private String lastAutoBackupStamp;
+
+    private BackupScheduler() {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "backup");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static synchronized BackupScheduler getInstance() {
+        if (instance == null) {
+            instance = new BackupScheduler();
+        }
+        return instance;
+    }
+
+    /**
+     * Queues a backup. The future completes with the backup directory or
+     * archive, or exceptionally with a CancellationException or the
+     * IOException (wrapped in an UncheckedIOException) that stopped it.
+     */
+    public CompletableFuture<Path> submit(FileStorage.BackupProgress progress) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return runBackup(progress);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Starts the automatic backups if backup.auto is enabled and an interval
+     * is configured.
+     */
+    public synchronized void startAutoBackup() {
+        if (autoBackup != null
+                || !Boolean.parseBoolean(FileStorage.getConfigValue("backup.auto", "true"))) {
+            return;
+        }
+        long interval = parseInterval(FileStorage.getConfigValue("backup.auto.interval", "0"));
+        if (interval > 0) {
+            autoBackup = executor.scheduleWithFixedDelay(this::runAutoBackup, interval, interval, TimeUnit.MINUTES);
+        }
+    }
+
+    public synchronized void stopAutoBackup() {
+        if (autoBackup != null) {
+            autoBackup.cancel(false);
+            autoBackup = null;
+        }
+    }
+
+    private static long parseInterval(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private Path runBackup(FileStorage.BackupProgress progress) throws IOException {
+        // Include changes still waiting on the write-behind thread
+        PaymentManager.getInstance().flush();
+        return FileStorage.createBackup(progress);
+    }
+
+    private void runAutoBackup() {
+        // Any exception would end the schedule
+        try {
+            PaymentManager.getInstance().flush();
+            String stamp = FileStorage.getBackupFilesStamp();
+            if (stamp.equals(lastAutoBackupStamp)) {
+                return;
+            }
+            FileStorage.createBackup();
+            lastAutoBackupStamp = stamp;
+        } catch (Exception e) {
+            System.err.println("Error creating automatic backup: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Content-addressed storage behind the backup directories.
+ *
+ * Every backed up file is stored once, named by the SHA-256 of its content,
+ * and the backup directories hold hard links to it (copies where the file
+ * system has no hard links). A backup therefore only writes files whose
+ * content changed since an earlier backup. Files whose size and modification
+ * time match the previous backup are not even read. Each backup directory
+ * lists its files in a manifest, which is also what keeps objects alive when
+ * old backups are deleted.
+ */
+class BackupStore {
+    static final String MANIFEST_FILE = "backup.manifest";
+
+    private final Path storeDir;
+
+    BackupStore(Path storeDir) {
+        this.storeDir = storeDir;
+    }
+
+    /**
+     * Fills the backup directory with the given files, keyed by their path
+     * inside the backup.
+     *
+     * @param previousBackup the latest earlier backup, or null
+     * @throws CancellationException if the progress reports a cancel
+     */
+    void backup(Map<String, Path> files, Path backupDir, Path previousBackup, FileStorage.BackupProgress progress)
+            throws IOException {
+        Files.createDirectories(storeDir);
+        Map<String, String[]> previous = previousBackup != null ? readManifest(previousBackup) : new HashMap<>();
+        List<String> manifest = new ArrayList<>();
+
+        for (Map.Entry<String, Path> file : files.entrySet()) {
+            if (progress.isCancelled()) {
+                throw new CancellationException("Backup cancelled");
+            }
+            String name = file.getKey();
+            Path source = file.getValue();
+            long size = Files.size(source);
+            long modified = Files.getLastModifiedTime(source).toMillis();
+
+            String[] entry = previous.get(name);
+            String hash;
+            if (entry != null && entry[1].equals(String.valueOf(size))
+                    && entry[2].equals(String.valueOf(modified)) && Files.exists(object(entry[0]))) {
+                hash = entry[0];
+            } else {
+                hash = store(source);
+            }
+
+            Path target = backupDir.resolve(name);
+            Files.createDirectories(target.getParent());
+            link(object(hash), target);
+            manifest.add(hash + " " + size + " " + modified + " " + name);
+            progress.update(manifest.size(), files.size());
+        }
+        Files.write(backupDir.resolve(MANIFEST_FILE), manifest, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Deletes the stored files no manifest of the given backups refers to.
+     */
+    void removeUnreferenced(List<Path> backupDirs) throws IOException {
+        if (!Files.isDirectory(storeDir)) {
+            return;
+        }
+        Set<String> referenced = new HashSet<>();
+        for (Path backupDir : backupDirs) {
+            for (String[] entry : readManifest(backupDir).values()) {
+                referenced.add(entry[0]);
+            }
+        }
+        try (DirectoryStream<Path> objects = Files.newDirectoryStream(storeDir)) {
+            for (Path object : objects) {
+                if (!referenced.contains(object.getFileName().toString())) {
+                    Files.deleteIfExists(object);
+                }
+            }
+        }
+    }
+
+    private Path object(String hash) {
+        return storeDir.resolve(hash);
+    }
+
+    // Copies the file into the store while hashing it, so the stored content
+    // always matches its name even if the file changes meanwhile
+    private String store(Path source) throws IOException {
+        Path temp = Files.createTempFile(storeDir, "object", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            try (InputStream in = new DigestInputStream(Files.newInputStream(source), digest)) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String hash = toHex(digest.digest());
+            if (!Files.exists(object(hash))) {
+                Files.move(temp, object(hash));
+            }
+            return hash;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void link(Path object, Path target) throws IOException {
+        try {
+            Files.createLink(target, object);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            Files.copy(object, target);
+        }
+    }
+
+    // File name to hash, size and modification time
+    private static Map<String, String[]> readManifest(Path backupDir) throws IOException {
+        Map<String, String[]> entries = new HashMap<>();
+        Path manifest = backupDir.resolve(MANIFEST_FILE);
+        if (!Files.exists(manifest)) {
+            return entries;
+        }
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            String[] parts = line.split(" ", 4);
+            if (parts.length == 4) {
+                entries.put(parts[3], parts);
+            }
+        }
+        return entries;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
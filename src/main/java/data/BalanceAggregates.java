@@ -0,0 +1,134 @@
+package data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+import models.DebitCredit;
+import models.Money;
+import models.Payment;
+import utils.IntLongHashMap;
+
+/**
+ * Running totals kept up to date on every add, update and delete, so summary
+ * values can be read without touching the payment history. Amounts are kept
+ * in Rappen and converted to BigDecimal only when read.
+ */
+class BalanceAggregates {
+    private long totalBalance;
+    private int paymentCount;
+    private final IntLongHashMap monthDebits = new IntLongHashMap(0);
+    private final IntLongHashMap monthCredits = new IntLongHashMap(0);
+    private final IntLongHashMap typeTotals = new IntLongHashMap(0);
+    private final IntLongHashMap locationTotals = new IntLongHashMap(0);
+    // Number of payments per type and location
+    private final IntLongHashMap typeCounts = new IntLongHashMap(0);
+    private final IntLongHashMap locationCounts = new IntLongHashMap(0);
+
+    public void add(Payment payment) {
+        add(payment.getPaymentDate(), payment.getDebitCreditType(), payment.getAmountCHFMinor(),
+                payment.getTypeId(), payment.getLocationId());
+    }
+
+    /**
+     * Adds a payment given by its values, for callers that do not have a
+     * Payment object.
+     */
+    public void add(LocalDate paymentDate, DebitCredit debitCredit, long amountCHFMinor, int typeId,
+            int locationId) {
+        apply(paymentDate, debitCredit, amountCHFMinor, typeId, locationId, 1);
+        paymentCount++;
+    }
+
+    public void remove(Payment payment) {
+        apply(payment.getPaymentDate(), payment.getDebitCreditType(), -payment.getAmountCHFMinor(),
+                payment.getTypeId(), payment.getLocationId(), -1);
+        paymentCount--;
+    }
+
+    private void apply(LocalDate paymentDate, DebitCredit debitCredit, long amount, int typeId, int locationId,
+            int count) {
+        int monthKey = PaymentDateIndex.monthKey(paymentDate.getYear(), paymentDate.getMonthValue());
+
+        if (debitCredit == DebitCredit.DEBIT) {
+            totalBalance -= amount;
+            monthDebits.addTo(monthKey, amount);
+        } else if (debitCredit == DebitCredit.CREDIT) {
+            totalBalance += amount;
+            monthCredits.addTo(monthKey, amount);
+        }
+
+        typeTotals.addTo(typeId, amount);
+        locationTotals.addTo(locationId, amount);
+        typeCounts.addTo(typeId, count);
+        locationCounts.addTo(locationId, count);
+    }
+
+    public void clear() {
+        totalBalance = 0;
+        paymentCount = 0;
+        monthDebits.clear();
+        monthCredits.clear();
+        typeTotals.clear();
+        locationTotals.clear();
+        typeCounts.clear();
+        locationCounts.clear();
+    }
+
+    public BigDecimal getTotalBalance() {
+        return Money.toBigDecimal(totalBalance);
+    }
+
+    public int getPaymentCount() {
+        return paymentCount;
+    }
+
+    public BigDecimal getMonthDebits(int year, int month) {
+        return Money.toBigDecimal(monthDebits.get(PaymentDateIndex.monthKey(year, month)));
+    }
+
+    public BigDecimal getMonthCredits(int year, int month) {
+        return Money.toBigDecimal(monthCredits.get(PaymentDateIndex.monthKey(year, month)));
+    }
+
+    public Map<Integer, BigDecimal> getTypeTotals() {
+        return toBigDecimalMap(typeTotals);
+    }
+
+    public Map<Integer, BigDecimal> getLocationTotals() {
+        return toBigDecimalMap(locationTotals);
+    }
+
+    public int getTypeCount(int typeId) {
+        return (int) typeCounts.get(typeId);
+    }
+
+    public int getLocationCount(int locationId) {
+        return (int) locationCounts.get(locationId);
+    }
+
+    public Map<Integer, Integer> getTypeCounts() {
+        return toCountMap(typeCounts);
+    }
+
+    public Map<Integer, Integer> getLocationCounts() {
+        return toCountMap(locationCounts);
+    }
+
+    private static Map<Integer, Integer> toCountMap(IntLongHashMap counts) {
+        Map<Integer, Integer> result = new HashMap<>();
+        counts.forEach((key, value) -> {
+            if (value != 0) {
+                result.put(key, (int) value);
+            }
+        });
+        return result;
+    }
+
+    private static Map<Integer, BigDecimal> toBigDecimalMap(IntLongHashMap totals) {
+        Map<Integer, BigDecimal> result = new HashMap<>();
+        totals.forEach((key, value) -> result.put(key, Money.toBigDecimal(value)));
+        return result;
+    }
+}
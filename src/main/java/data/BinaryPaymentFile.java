@@ -0,0 +1,308 @@
+package data;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import models.DebitCredit;
+import models.Money;
+import models.Payment;
+import models.Recurrence;
+
+/**
+ * Binary payment file used instead of payments.csv when storage.format is
+ * "binary".
+ *
+ * Layout: a header (magic, version, record count, heap offset), one
+ * fixed-width record per payment and a string heap. Dates are stored as epoch
+ * days, decimals as unscaled long plus scale and strings as offsets into the
+ * heap, so reading needs no text parsing. Equal strings such as currency
+ * codes are stored once. Since version 2 a record also points to the stored
+ * recurrence and debit/credit labels the enums do not know, so they survive
+ * a round trip through this format; version 1 files are still read.
+ */
+class BinaryPaymentFile {
+    private static final int MAGIC = 0x50415942; // "PAYB"
+    static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 65;
+    private static final int RECORD_SIZE_V1 = 57;
+    private static final byte NO_VALUE = Byte.MIN_VALUE;
+    private static final int NO_STRING = -1;
+
+    private static final Recurrence[] RECURRENCES = Recurrence.values();
+    private static final DebitCredit[] DEBIT_CREDITS = DebitCredit.values();
+
+    private BinaryPaymentFile() {
+    }
+
+    static boolean exists() {
+        return Files.exists(Paths.get(FileStorage.PAYMENTS_BINARY_FILE));
+    }
+
+    static void delete() throws IOException {
+        Files.deleteIfExists(Paths.get(FileStorage.PAYMENTS_BINARY_FILE));
+    }
+
+    static void write(byte[] content) throws IOException {
+        write(FileStorage.PAYMENTS_BINARY_FILE, content);
+    }
+
+    static void write(String filename, byte[] content) throws IOException {
+        FileStorage.writeAtomically(filename, content);
+    }
+
+    /**
+     * Encodes the payments in the given order. Unknown labels holds the
+     * stored recurrence and debit/credit text by payment id, used where the
+     * enum is null.
+     */
+    static byte[] encode(List<Payment> payments, Map<Integer, String[]> unknownLabels) {
+        Map<String, Integer> stringOffsets = new HashMap<>();
+        ByteBuffer heap = ByteBuffer.allocate(1024);
+        ByteBuffer records = ByteBuffer.allocate(payments.size() * RECORD_SIZE);
+
+        for (Payment payment : payments) {
+            records.putInt(payment.getId());
+            records.putInt((int) payment.getPaymentDate().toEpochDay());
+            records.putInt((int) payment.getCreatedAt().toEpochDay());
+            putDecimal(records, payment.getAmount());
+            putDecimal(records, payment.getAmountCHF());
+            putDecimal(records, payment.getExchangeRate());
+
+            heap = putString(heap, stringOffsets, payment.getDescription());
+            records.putInt(stringOffsets.getOrDefault(payment.getDescription(), NO_STRING));
+            heap = putString(heap, stringOffsets, payment.getCurrency());
+            records.putInt(stringOffsets.getOrDefault(payment.getCurrency(), NO_STRING));
+
+            records.put(ordinal(payment.getRecurrenceType()));
+            records.put(ordinal(payment.getDebitCreditType()));
+            records.putInt(payment.getLocationId());
+            records.putInt(payment.getTypeId());
+
+            String[] labels = unknownLabels.get(payment.getId());
+            String recurrence = labels != null && payment.getRecurrenceType() == null ? labels[0] : null;
+            String debitCredit = labels != null && payment.getDebitCreditType() == null ? labels[1] : null;
+            heap = putString(heap, stringOffsets, recurrence);
+            records.putInt(recurrence == null ? NO_STRING : stringOffsets.get(recurrence));
+            heap = putString(heap, stringOffsets, debitCredit);
+            records.putInt(debitCredit == null ? NO_STRING : stringOffsets.get(debitCredit));
+        }
+
+        ByteBuffer file = ByteBuffer.allocate(HEADER_SIZE + records.position() + heap.position());
+        file.putInt(MAGIC);
+        file.putInt(VERSION);
+        file.putInt(payments.size());
+        file.putInt(HEADER_SIZE + records.position());
+        file.put(records.array(), 0, records.position());
+        file.put(heap.array(), 0, heap.position());
+        return file.array();
+    }
+
+    private static void putDecimal(ByteBuffer buffer, BigDecimal value) {
+        if (value == null) {
+            buffer.putLong(0);
+            buffer.put(NO_VALUE);
+            return;
+        }
+        if (value.scale() <= NO_VALUE || value.scale() > Byte.MAX_VALUE) {
+            throw new ArithmeticException("Scale out of range: " + value);
+        }
+        buffer.putLong(value.unscaledValue().longValueExact());
+        buffer.put((byte) value.scale());
+    }
+
+    // Adds the string to the heap unless it is already there
+    private static ByteBuffer putString(ByteBuffer heap, Map<String, Integer> offsets, String value) {
+        if (value == null || offsets.containsKey(value)) {
+            return heap;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (heap.remaining() < bytes.length + 4) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(heap.capacity() * 2, heap.position() + bytes.length + 4));
+            larger.put(heap.array(), 0, heap.position());
+            heap = larger;
+        }
+        offsets.put(value, heap.position());
+        heap.putInt(bytes.length);
+        heap.put(bytes);
+        return heap;
+    }
+
+    private static byte ordinal(Enum<?> value) {
+        return value == null ? NO_VALUE : (byte) value.ordinal();
+    }
+
+    /**
+     * Reads the file into memory. The file is not mapped, so it can be
+     * replaced right after.
+     */
+    static Records read() throws IOException {
+        Path file = Paths.get(FileStorage.PAYMENTS_BINARY_FILE);
+        return records(ByteBuffer.wrap(Files.readAllBytes(file)), file);
+    }
+
+    /**
+     * Memory-maps a file in this format read-only. While the mapping is in
+     * use Windows refuses to replace or delete the file, so a mapped file is
+     * never written again; new contents go to a new file.
+     */
+    static Records map(String filename) throws IOException {
+        Path file = Paths.get(filename);
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return records(buffer, file);
+    }
+
+    private static Records records(ByteBuffer buffer, Path file) throws IOException {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a payment file: " + file);
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION && version != 1) {
+            throw new IOException("Unsupported payment file version " + version);
+        }
+        int recordSize = version == 1 ? RECORD_SIZE_V1 : RECORD_SIZE;
+        int count = buffer.getInt(8);
+        int heapOffset = buffer.getInt(12);
+        if (count < 0 || heapOffset != HEADER_SIZE + (long) count * recordSize || heapOffset > buffer.limit()) {
+            throw new IOException("Truncated payment file: " + file);
+        }
+        return new Records(buffer, recordSize, count, heapOffset);
+    }
+
+    /**
+     * Read-only view of the records of a file. Single fields can be
+     * read without decoding the whole payment.
+     */
+    static final class Records {
+        private final ByteBuffer buffer;
+        private final int recordSize;
+        private final int count;
+        private final int heapOffset;
+        // Repeated strings (currencies) are decoded once
+        private final Map<Integer, String> strings = new ConcurrentHashMap<>();
+
+        private Records(ByteBuffer buffer, int recordSize, int count, int heapOffset) {
+            this.buffer = buffer;
+            this.recordSize = recordSize;
+            this.count = count;
+            this.heapOffset = heapOffset;
+        }
+
+        int size() {
+            return count;
+        }
+
+        private int position(int record) {
+            return HEADER_SIZE + record * recordSize;
+        }
+
+        int id(int record) {
+            return buffer.getInt(position(record));
+        }
+
+        int paymentDay(int record) {
+            return buffer.getInt(position(record) + 4);
+        }
+
+        long amountCHFMinor(int record) {
+            int position = position(record) + 21;
+            byte scale = buffer.get(position + 8);
+            return scale == NO_VALUE ? 0 : Money.toMinorUnits(buffer.getLong(position), scale);
+        }
+
+        DebitCredit debitCredit(int record) {
+            return fromOrdinal(DEBIT_CREDITS, buffer.get(position(record) + 48));
+        }
+
+        int locationId(int record) {
+            return buffer.getInt(position(record) + 49);
+        }
+
+        int typeId(int record) {
+            return buffer.getInt(position(record) + 53);
+        }
+
+        Payment payment(int record) {
+            int position = position(record);
+            Payment payment = new Payment();
+            payment.setId(buffer.getInt(position));
+            payment.setPaymentDate(LocalDate.ofEpochDay(buffer.getInt(position + 4)));
+            payment.setCreatedAt(LocalDate.ofEpochDay(buffer.getInt(position + 8)));
+            payment.setAmount(getDecimal(buffer, position + 12));
+            payment.setAmountCHF(getDecimal(buffer, position + 21));
+            payment.setExchangeRate(getDecimal(buffer, position + 30));
+            payment.setDescription(getString(buffer, heapOffset, buffer.getInt(position + 39), null));
+            payment.setCurrency(getString(buffer, heapOffset, buffer.getInt(position + 43), strings));
+            payment.setRecurrenceType(fromOrdinal(RECURRENCES, buffer.get(position + 47)));
+            payment.setDebitCreditType(fromOrdinal(DEBIT_CREDITS, buffer.get(position + 48)));
+            payment.setLocationId(buffer.getInt(position + 49));
+            payment.setTypeId(buffer.getInt(position + 53));
+            return payment;
+        }
+
+        /**
+         * Returns the stored recurrence and debit/credit labels of a record
+         * whose enums are unknown, or null if the record has none.
+         */
+        String[] unknownLabels(int record) {
+            if (recordSize == RECORD_SIZE_V1) {
+                return null;
+            }
+            int position = position(record);
+            int recurrence = buffer.getInt(position + 57);
+            int debitCredit = buffer.getInt(position + 61);
+            if (recurrence == NO_STRING && debitCredit == NO_STRING) {
+                return null;
+            }
+            return new String[] { getString(buffer, heapOffset, recurrence, strings),
+                    getString(buffer, heapOffset, debitCredit, strings) };
+        }
+    }
+
+    private static BigDecimal getDecimal(ByteBuffer buffer, int position) {
+        byte scale = buffer.get(position + 8);
+        return scale == NO_VALUE ? null : BigDecimal.valueOf(buffer.getLong(position), scale);
+    }
+
+    private static String getString(ByteBuffer buffer, int heapOffset, int offset, Map<Integer, String> cache) {
+        if (offset == NO_STRING) {
+            return null;
+        }
+        if (cache != null) {
+            String cached = cache.get(offset);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        int position = heapOffset + offset;
+        byte[] bytes = new byte[buffer.getInt(position)];
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(position + 4);
+        slice.get(bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        if (cache != null) {
+            cache.put(offset, value);
+        }
+        return value;
+    }
+
+    private static <E> E fromOrdinal(E[] constants, byte ordinal) {
+        return ordinal == NO_VALUE ? null : constants[ordinal];
+    }
+}
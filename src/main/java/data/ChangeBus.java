@@ -0,0 +1,65 @@
+package data;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Tells managers and panels about changes to the data.
+ *
+ * Subscribers register for an event class and receive every published event
+ * of that class or a subclass, on the publishing thread and in the order they
+ * subscribed. The managers publish after releasing their locks, so a
+ * subscriber may read from any manager. Panels have to switch to the event
+ * dispatch thread themselves.
+ */
+public class ChangeBus {
+    private static ChangeBus instance;
+
+    private final List<Subscription<?>> subscriptions = new CopyOnWriteArrayList<>();
+
+    private ChangeBus() {
+    }
+
+    public static synchronized ChangeBus getInstance() {
+        if (instance == null) {
+            instance = new ChangeBus();
+        }
+        return instance;
+    }
+
+    public <E> void subscribe(Class<E> eventType, Consumer<? super E> listener) {
+        subscriptions.add(new Subscription<>(eventType, listener));
+    }
+
+    public void unsubscribe(Consumer<?> listener) {
+        subscriptions.removeIf(subscription -> subscription.listener == listener);
+    }
+
+    public void publish(Object event) {
+        for (Subscription<?> subscription : subscriptions) {
+            // One failing subscriber must not keep the others uninformed
+            try {
+                subscription.deliver(event);
+            } catch (Exception e) {
+                System.err.println("Error handling " + event.getClass().getSimpleName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static final class Subscription<E> {
+        private final Class<E> eventType;
+        private final Consumer<? super E> listener;
+
+        Subscription(Class<E> eventType, Consumer<? super E> listener) {
+            this.eventType = eventType;
+            this.listener = listener;
+        }
+
+        void deliver(Object event) {
+            if (eventType.isInstance(event)) {
+                listener.accept(eventType.cast(event));
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package data;
+
+/**
+ * What happened to the entity of a change event.
+ */
+public enum ChangeKind {
+    ADDED,
+    UPDATED,
+    DELETED
+}
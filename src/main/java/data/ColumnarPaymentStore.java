@@ -0,0 +1,273 @@
+package data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import models.DebitCredit;
+import models.Payment;
+import models.Recurrence;
+import utils.IntIntHashMap;
+
+/**
+ * Stores payments as parallel primitive columns instead of one object per
+ * payment. Decimal values are kept as unscaled long plus scale, dates as
+ * epoch days, currencies as dictionary codes and recurrence and debit/credit
+ * as enum ordinals.
+ * Payment objects are only built when a caller asks for one.
+ */
+class ColumnarPaymentStore implements PaymentStore {
+    private static final byte NO_VALUE = Byte.MIN_VALUE;
+    private static final Recurrence[] RECURRENCES = Recurrence.values();
+    private static final DebitCredit[] DEBIT_CREDITS = DebitCredit.values();
+
+    private final IntIntHashMap rowById = new IntIntHashMap(-1);
+    private final StringDictionary currencies = new StringDictionary();
+
+    private int rowCount;
+    private int deletedRows;
+    private boolean[] deleted;
+    private int[] ids;
+    private int[] paymentDays;
+    private int[] createdDays;
+    private String[] descriptions;
+    private long[] amounts;
+    private byte[] amountScales;
+    private long[] amountsCHF;
+    private byte[] amountCHFScales;
+    private long[] amountsCHFMinor;
+    private long[] exchangeRates;
+    private byte[] exchangeRateScales;
+    private short[] currencyCodes;
+    private byte[] recurrenceCodes;
+    private byte[] debitCreditCodes;
+    private int[] locationIds;
+    private int[] typeIds;
+
+    ColumnarPaymentStore() {
+        allocate(1024);
+    }
+
+    private void allocate(int capacity) {
+        deleted = new boolean[capacity];
+        ids = new int[capacity];
+        paymentDays = new int[capacity];
+        createdDays = new int[capacity];
+        descriptions = new String[capacity];
+        amounts = new long[capacity];
+        amountScales = new byte[capacity];
+        amountsCHF = new long[capacity];
+        amountCHFScales = new byte[capacity];
+        amountsCHFMinor = new long[capacity];
+        exchangeRates = new long[capacity];
+        exchangeRateScales = new byte[capacity];
+        currencyCodes = new short[capacity];
+        recurrenceCodes = new byte[capacity];
+        debitCreditCodes = new byte[capacity];
+        locationIds = new int[capacity];
+        typeIds = new int[capacity];
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        deleted = Arrays.copyOf(deleted, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        paymentDays = Arrays.copyOf(paymentDays, capacity);
+        createdDays = Arrays.copyOf(createdDays, capacity);
+        descriptions = Arrays.copyOf(descriptions, capacity);
+        amounts = Arrays.copyOf(amounts, capacity);
+        amountScales = Arrays.copyOf(amountScales, capacity);
+        amountsCHF = Arrays.copyOf(amountsCHF, capacity);
+        amountCHFScales = Arrays.copyOf(amountCHFScales, capacity);
+        amountsCHFMinor = Arrays.copyOf(amountsCHFMinor, capacity);
+        exchangeRates = Arrays.copyOf(exchangeRates, capacity);
+        exchangeRateScales = Arrays.copyOf(exchangeRateScales, capacity);
+        currencyCodes = Arrays.copyOf(currencyCodes, capacity);
+        recurrenceCodes = Arrays.copyOf(recurrenceCodes, capacity);
+        debitCreditCodes = Arrays.copyOf(debitCreditCodes, capacity);
+        locationIds = Arrays.copyOf(locationIds, capacity);
+        typeIds = Arrays.copyOf(typeIds, capacity);
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return rowById.containsKey(id);
+    }
+
+    @Override
+    public Payment get(int id) {
+        int row = rowById.get(id);
+        return row >= 0 ? materialize(row) : null;
+    }
+
+    private Payment materialize(int row) {
+        Payment payment = new Payment();
+        payment.setId(ids[row]);
+        payment.setPaymentDate(LocalDate.ofEpochDay(paymentDays[row]));
+        payment.setDescription(descriptions[row]);
+        payment.setAmount(toDecimal(amounts[row], amountScales[row]));
+        payment.setCurrency(currencies.decode(currencyCodes[row]));
+        payment.setAmountCHF(toDecimal(amountsCHF[row], amountCHFScales[row]));
+        payment.setExchangeRate(toDecimal(exchangeRates[row], exchangeRateScales[row]));
+        payment.setRecurrenceType(decode(RECURRENCES, recurrenceCodes[row]));
+        payment.setDebitCreditType(decode(DEBIT_CREDITS, debitCreditCodes[row]));
+        payment.setLocationId(locationIds[row]);
+        payment.setTypeId(typeIds[row]);
+        payment.setCreatedAt(LocalDate.ofEpochDay(createdDays[row]));
+        return payment;
+    }
+
+    @Override
+    public void put(Payment payment) {
+        // Convert the decimals first so a value that does not fit leaves no
+        // half-written row behind
+        long amount = unscaled(payment.getAmount());
+        byte amountScale = scale(payment.getAmount());
+        long amountCHF = unscaled(payment.getAmountCHF());
+        byte amountCHFScale = scale(payment.getAmountCHF());
+        long exchangeRate = unscaled(payment.getExchangeRate());
+        byte exchangeRateScale = scale(payment.getExchangeRate());
+
+        int row = rowById.get(payment.getId());
+        if (row < 0) {
+            if (rowCount == ids.length) {
+                grow();
+            }
+            row = rowCount++;
+            rowById.put(payment.getId(), row);
+        }
+
+        deleted[row] = false;
+        ids[row] = payment.getId();
+        paymentDays[row] = (int) payment.getPaymentDate().toEpochDay();
+        createdDays[row] = (int) payment.getCreatedAt().toEpochDay();
+        descriptions[row] = payment.getDescription();
+        amounts[row] = amount;
+        amountScales[row] = amountScale;
+        amountsCHF[row] = amountCHF;
+        amountCHFScales[row] = amountCHFScale;
+        amountsCHFMinor[row] = payment.getAmountCHFMinor();
+        exchangeRates[row] = exchangeRate;
+        exchangeRateScales[row] = exchangeRateScale;
+        currencyCodes[row] = (short) currencies.encode(payment.getCurrency());
+        recurrenceCodes[row] = encode(payment.getRecurrenceType());
+        debitCreditCodes[row] = encode(payment.getDebitCreditType());
+        locationIds[row] = payment.getLocationId();
+        typeIds[row] = payment.getTypeId();
+    }
+
+    private static long unscaled(BigDecimal value) {
+        return value == null ? 0 : value.unscaledValue().longValueExact();
+    }
+
+    private static byte scale(BigDecimal value) {
+        if (value == null) {
+            return NO_VALUE;
+        }
+        if (value.scale() <= NO_VALUE || value.scale() > Byte.MAX_VALUE) {
+            throw new ArithmeticException("Scale out of range: " + value);
+        }
+        return (byte) value.scale();
+    }
+
+    private static byte encode(Enum<?> value) {
+        return value == null ? NO_VALUE : (byte) value.ordinal();
+    }
+
+    private static <E> E decode(E[] constants, byte code) {
+        return code == NO_VALUE ? null : constants[code];
+    }
+
+    private static BigDecimal toDecimal(long unscaled, byte scale) {
+        return scale == NO_VALUE ? null : BigDecimal.valueOf(unscaled, scale);
+    }
+
+    @Override
+    public void remove(int id) {
+        int row = rowById.remove(id);
+        if (row < 0) {
+            return;
+        }
+        deleted[row] = true;
+        descriptions[row] = null;
+        deletedRows++;
+        if (deletedRows > 64 && deletedRows > rowCount / 4) {
+            compact();
+        }
+    }
+
+    // Moves the live rows down over the deleted ones
+    private void compact() {
+        int target = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (deleted[row]) {
+                continue;
+            }
+            if (target != row) {
+                ids[target] = ids[row];
+                paymentDays[target] = paymentDays[row];
+                createdDays[target] = createdDays[row];
+                descriptions[target] = descriptions[row];
+                amounts[target] = amounts[row];
+                amountScales[target] = amountScales[row];
+                amountsCHF[target] = amountsCHF[row];
+                amountCHFScales[target] = amountCHFScales[row];
+                amountsCHFMinor[target] = amountsCHFMinor[row];
+                exchangeRates[target] = exchangeRates[row];
+                exchangeRateScales[target] = exchangeRateScales[row];
+                currencyCodes[target] = currencyCodes[row];
+                recurrenceCodes[target] = recurrenceCodes[row];
+                debitCreditCodes[target] = debitCreditCodes[row];
+                locationIds[target] = locationIds[row];
+                typeIds[target] = typeIds[row];
+                rowById.put(ids[target], target);
+            }
+            target++;
+        }
+        Arrays.fill(deleted, 0, rowCount, false);
+        Arrays.fill(descriptions, target, rowCount, null);
+        rowCount = target;
+        deletedRows = 0;
+    }
+
+    @Override
+    public int size() {
+        return rowById.size();
+    }
+
+    @Override
+    public void clear() {
+        rowById.clear();
+        Arrays.fill(descriptions, 0, rowCount, null);
+        Arrays.fill(deleted, 0, rowCount, false);
+        rowCount = 0;
+        deletedRows = 0;
+    }
+
+    @Override
+    public void forEach(Consumer<Payment> action) {
+        for (int row = 0; row < rowCount; row++) {
+            if (!deleted[row]) {
+                action.accept(materialize(row));
+            }
+        }
+    }
+
+    @Override
+    public long getAmountCHFMinor(int id) {
+        return amountsCHFMinor[rowById.get(id)];
+    }
+
+    @Override
+    public long getSignedAmountCHFMinor(int id) {
+        int row = rowById.get(id);
+        return PaymentStore.signedAmount(decode(DEBIT_CREDITS, debitCreditCodes[row]),
+                amountsCHFMinor[row]);
+    }
+
+    @Override
+    public int getTypeId(int id) {
+        return typeIds[rowById.get(id)];
+    }
+}
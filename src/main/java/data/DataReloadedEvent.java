@@ -0,0 +1,20 @@
+package data;
+
+/**
+ * A manager dropped its data and read it again from disk, for example after
+ * restoring a backup. Anything derived from that manager has to be rebuilt.
+ */
+public final class DataReloadedEvent {
+    private final Class<?> source;
+
+    DataReloadedEvent(Class<?> source) {
+        this.source = source;
+    }
+
+    /**
+     * The class of the manager that reloaded.
+     */
+    public Class<?> getSource() {
+        return source;
+    }
+}
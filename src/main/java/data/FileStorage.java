@@ -1,18 +1,46 @@
 package data;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.csv.*;
 
@@ -22,6 +50,23 @@ public class FileStorage {
     private static final String LOCATIONS_FILE = DATA_DIR + "/locations.csv";
     private static final String TYPES_FILE = DATA_DIR + "/types.csv";
     private static final String CONFIG_FILE = DATA_DIR + "/config.properties";
+    static final String PAYMENTS_JOURNAL_FILE = DATA_DIR + "/payments.journal";
+    static final String PAYMENTS_BINARY_FILE = DATA_DIR + "/payments.bin";
+    private static final String PAYMENT_PARTITIONS_DIR = DATA_DIR + "/payments";
+    private static final String BACKUP_STORE_DIR = DATA_DIR + "/backup-store";
+    // Used while restoring a backup
+    private static final String RESTORE_STAGING_DIR = DATA_DIR + "/restore.tmp";
+    private static final String RESTORE_ASIDE_DIR = DATA_DIR + "/restore.old";
+
+    // Durability policy, read on the first write
+    private static String fsyncPolicy;
+    private static long fsyncInterval;
+    private static long lastSync;
+    // Files written without fsync under the batched policy; synced by the
+    // timer at the end of the interval or by the next synced write
+    private static final Set<Path> pendingSync = new LinkedHashSet<>();
+    private static ScheduledExecutorService syncTimer;
+    private static boolean syncScheduled;
 
     // CSV Headers
     private static final String[] PAYMENT_HEADERS = {
@@ -88,6 +133,19 @@ public class FileStorage {
                 writer.println("last.id.type=8");
                 writer.println("backup.auto=true");
                 writer.println("backup.max=10");
+                writer.println("backup.compress=false");
+                writer.println("backup.auto.interval=0");
+                writer.println("journal.enabled=false");
+                writer.println("journal.compact.threshold=1048576");
+                writer.println("storage.columnar=false");
+                writer.println("load.parallel.threshold=1048576");
+                writer.println("persistence.writebehind=false");
+                writer.println("persistence.writebehind.delay=500");
+                writer.println("storage.fsync=always");
+                writer.println("storage.fsync.interval=1000");
+                writer.println("storage.partitioned=false");
+                writer.println("storage.format=csv");
+                writer.println("storage.snapshot=false");
             }
         }
     }
@@ -95,17 +153,186 @@ public class FileStorage {
     // Payment methods using Apache Commons CSV
     public static void savePayments(List<String[]> payments) throws IOException {
         writeCSV(PAYMENTS_FILE, PAYMENT_HEADERS, payments);
-        updateConfig("last.id.payment", String.valueOf(getNextPaymentId() - 1));
     }
 
     public static List<String[]> loadPayments() throws IOException {
         return readCSV(PAYMENTS_FILE);
     }
 
+    /**
+     * Parses every payment record and hands the results to the action in
+     * file order, without collecting the raw rows in a list first. Files
+     * above load.parallel.threshold bytes are parsed in chunks on several
+     * threads, so the parser must be thread-safe; the action always runs on
+     * the calling thread. Records parsed to null are skipped.
+     */
+    public static <T> void forEachPayment(Function<CSVRecord, T> parser, Consumer<T> action)
+            throws IOException {
+        forEachPayment(Paths.get(PAYMENTS_FILE), parser, action);
+    }
+
+    private static <T> void forEachPayment(Path file, Function<CSVRecord, T> parser, Consumer<T> action)
+            throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        long threshold = parseParallelThreshold(getConfigValue("load.parallel.threshold", "1048576"));
+        long size = Files.size(file);
+        if (threshold >= 0 && size >= threshold && size <= Integer.MAX_VALUE
+                && Runtime.getRuntime().availableProcessors() > 1) {
+            ParallelCsvReader.read(file, parser, action);
+            return;
+        }
+
+        readCSV(file.toString(), record -> {
+            T value = parser.apply(record);
+            if (value != null) {
+                action.accept(value);
+            }
+        });
+    }
+
+    // A bad value must not stop the payments from loading
+    private static long parseParallelThreshold(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 1048576;
+        }
+    }
+
+    // Payment partitions: one file per year under data/payments, named by
+    // the partition ("2024.csv", "recurring.csv")
+    static boolean hasPaymentPartitions() {
+        return Files.isDirectory(Paths.get(PAYMENT_PARTITIONS_DIR));
+    }
+
+    static List<String> listPaymentPartitions() throws IOException {
+        List<String> partitions = new ArrayList<>();
+        if (!hasPaymentPartitions()) {
+            return partitions;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(PAYMENT_PARTITIONS_DIR), "*.csv")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                partitions.add(name.substring(0, name.length() - ".csv".length()));
+            }
+        }
+        return partitions;
+    }
+
+    static <T> void forEachPaymentInPartition(String partition, Function<CSVRecord, T> parser,
+            Consumer<T> action) throws IOException {
+        forEachPayment(Paths.get(PAYMENT_PARTITIONS_DIR, partition + ".csv"), parser, action);
+    }
+
+    static void savePaymentPartition(String partition, List<String[]> payments) throws IOException {
+        Files.createDirectories(Paths.get(PAYMENT_PARTITIONS_DIR));
+        writeCSV(PAYMENT_PARTITIONS_DIR + "/" + partition + ".csv", PAYMENT_HEADERS, payments);
+    }
+
+    static void createPaymentPartitions() throws IOException {
+        Files.createDirectories(Paths.get(PAYMENT_PARTITIONS_DIR));
+    }
+
+    /**
+     * Called once all payments are stored in another format; payments.csv
+     * is kept as payments.csv.migrated.
+     */
+    static void archivePaymentsFile() throws IOException {
+        Path paymentsFile = Paths.get(PAYMENTS_FILE);
+        if (Files.exists(paymentsFile)) {
+            Files.move(paymentsFile, Paths.get(PAYMENTS_FILE + ".migrated"), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    static void deletePaymentPartitions() {
+        deleteDirectory(new File(PAYMENT_PARTITIONS_DIR));
+    }
+
+    /**
+     * Returns a checksum over the size and modification time of the payment
+     * files a snapshot can be built from. Any save changes the value.
+     */
+    static String getPaymentFilesStamp() throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String filename : new String[] { PAYMENTS_FILE, PAYMENTS_BINARY_FILE,
+                PAYMENTS_JOURNAL_FILE, PAYMENTS_JOURNAL_FILE + ".compacting" }) {
+            files.add(Paths.get(filename));
+        }
+        return getStamp(files);
+    }
+
+    /**
+     * Like getPaymentFilesStamp, over all files a backup would contain.
+     */
+    static String getBackupFilesStamp() throws IOException {
+        return getStamp(getBackupFiles().values());
+    }
+
+    private static String getStamp(Collection<Path> files) throws IOException {
+        StringBuilder stamp = new StringBuilder();
+        for (Path file : files) {
+            if (Files.exists(file)) {
+                stamp.append(file).append(':').append(Files.size(file)).append(':')
+                        .append(Files.getLastModifiedTime(file).toMillis()).append(';');
+            }
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(stamp.toString().getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(checksum.getValue());
+    }
+
+    /**
+     * Returns an unused name for a new payment snapshot. Every snapshot gets
+     * its own file because the current one stays mapped while the program
+     * runs, and Windows does not allow replacing a mapped file.
+     */
+    static Path newSnapshotFile() {
+        long number = System.currentTimeMillis();
+        Path file;
+        do {
+            file = Paths.get(DATA_DIR, "payments-" + number++ + ".snapshot");
+        } while (Files.exists(file));
+        return file;
+    }
+
+    /**
+     * Resolves a snapshot name as stored in the config, or returns null if it
+     * does not name a snapshot file in the data directory.
+     */
+    static Path getSnapshotFile(String name) {
+        return name.matches("payments-\\d+\\.snapshot") ? Paths.get(DATA_DIR, name) : null;
+    }
+
+    /**
+     * Deletes all snapshot files except the given one, which may be null.
+     * Failures are ignored: a snapshot that is still mapped cannot be deleted
+     * on Windows and is removed on a later start instead.
+     */
+    static void deleteSnapshots(Path keep) {
+        if (!Files.isDirectory(Paths.get(DATA_DIR))) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(DATA_DIR), "payments*.snapshot")) {
+            for (Path file : files) {
+                if (keep == null || !file.getFileName().equals(keep.getFileName())) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        // Still mapped, retried on the next call
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error deleting old payment snapshots: " + e.getMessage());
+        }
+    }
+
     // Location methods
     public static void saveLocations(List<String[]> locations) throws IOException {
         writeCSV(LOCATIONS_FILE, LOCATION_HEADERS, locations);
-        updateConfig("last.id.location", String.valueOf(getNextLocationId() - 1));
     }
 
     public static List<String[]> loadLocations() throws IOException {
@@ -115,7 +342,6 @@ public class FileStorage {
     // Type methods
     public static void saveTypes(List<String[]> types) throws IOException {
         writeCSV(TYPES_FILE, TYPE_HEADERS, types);
-        updateConfig("last.id.type", String.valueOf(getNextTypeId() - 1));
     }
 
     public static List<String[]> loadTypes() throws IOException {
@@ -124,21 +350,161 @@ public class FileStorage {
 
     // Helper methods using Apache Commons CSV
     private static void writeCSV(String filename, String[] headers, List<String[]> data) throws IOException {
-        try (FileWriter writer = new FileWriter(filename);
-                CSVPrinter csvPrinter = new CSVPrinter(writer,
-                        CSVFormat.DEFAULT.withHeader(headers))) {
-
+        writeAtomically(Paths.get(filename), writer -> {
+            CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader(headers));
             for (String[] row : data) {
                 csvPrinter.printRecord((Object[]) row);
             }
+            csvPrinter.flush();
+        });
+    }
+
+    private interface WriterBody {
+        void write(Writer writer) throws IOException;
+    }
+
+    private interface OutputBody {
+        void write(OutputStream out) throws IOException;
+    }
+
+    static void writeAtomically(String filename, byte[] content) throws IOException {
+        writeStreamAtomically(Paths.get(filename), out -> out.write(content));
+    }
+
+    private static void writeAtomically(Path target, WriterBody body) throws IOException {
+        writeStreamAtomically(target, out -> {
+            Writer writer = new OutputStreamWriter(out, Charset.defaultCharset());
+            body.write(writer);
+            writer.flush();
+        });
+    }
+
+    /**
+     * Writes the file next to the target and renames it over the target, so
+     * a crash leaves either the old or the new content. Whether the data is
+     * forced to disk before the rename follows storage.fsync: always, batched
+     * (at most once per storage.fsync.interval milliseconds, writes in
+     * between are synced at the end of the interval) or never.
+     */
+    private static synchronized void writeStreamAtomically(Path target, OutputBody body) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        boolean sync = shouldSync(target);
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+                body.write(out);
+                out.flush();
+                if (sync) {
+                    out.getFD().sync();
+                }
+            }
+
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            if (sync) {
+                syncDirectory(target.toAbsolutePath().getParent());
+                syncPending();
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static boolean shouldSync(Path target) {
+        if (fsyncPolicy == null) {
+            fsyncPolicy = getConfigValue("storage.fsync", "always").trim();
+            try {
+                fsyncInterval = Long.parseLong(getConfigValue("storage.fsync.interval", "1000").trim());
+            } catch (NumberFormatException e) {
+                fsyncInterval = 1000;
+            }
+        }
+
+        switch (fsyncPolicy) {
+            case "never":
+                return false;
+            case "batched":
+                long now = System.currentTimeMillis();
+                if (now - lastSync < fsyncInterval) {
+                    pendingSync.add(target);
+                    scheduleSync(lastSync + fsyncInterval - now);
+                    return false;
+                }
+                lastSync = now;
+                pendingSync.remove(target);
+                return true;
+            default: // "always"
+                return true;
+        }
+    }
+
+    private static void scheduleSync(long delay) {
+        if (syncScheduled) {
+            return;
+        }
+        if (syncTimer == null) {
+            syncTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "fsync");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        syncTimer.schedule(FileStorage::syncPending, delay, TimeUnit.MILLISECONDS);
+        syncScheduled = true;
+    }
+
+    /**
+     * Forces the files written without fsync under the batched policy to
+     * disk. Runs from the timer, after a synced write and on shutdown.
+     */
+    static synchronized void syncPending() {
+        syncScheduled = false;
+        if (pendingSync.isEmpty()) {
+            return;
+        }
+        Set<Path> directories = new LinkedHashSet<>();
+        for (Path file : pendingSync) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            } catch (IOException e) {
+                // Replaced or deleted since; its successor was synced or is pending
+            }
+            directories.add(file.toAbsolutePath().getParent());
+        }
+        directories.forEach(FileStorage::syncDirectory);
+        pendingSync.clear();
+        lastSync = System.currentTimeMillis();
+    }
+
+    // Makes the rename itself durable; not supported on every platform
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Ignore, the file content is already on disk
         }
     }
 
     private static List<String[]> readCSV(String filename) throws IOException {
         List<String[]> data = new ArrayList<>();
 
+        readCSV(filename, record -> {
+            String[] row = new String[record.size()];
+            for (int i = 0; i < record.size(); i++) {
+                row[i] = record.get(i);
+            }
+            data.add(row);
+        });
+
+        return data;
+    }
+
+    private static void readCSV(String filename, Consumer<CSVRecord> action) throws IOException {
         if (!Files.exists(Paths.get(filename))) {
-            return data;
+            return;
         }
 
         try (FileReader reader = new FileReader(filename);
@@ -149,75 +515,369 @@ public class FileStorage {
                         .parse(reader)) {
 
             for (CSVRecord record : csvParser) {
-                String[] row = new String[record.size()];
-                for (int i = 0; i < record.size(); i++) {
-                    row[i] = record.get(i);
-                }
-                data.add(row);
+                action.accept(record);
             }
         }
-
-        return data;
     }
 
-    // ID management
+    // ID management; declared after the static block so the config file
+    // exists when the allocators read it
+    private static final IdAllocator PAYMENT_IDS = new IdAllocator("last.id.payment");
+    private static final IdAllocator LOCATION_IDS = new IdAllocator("last.id.location");
+    private static final IdAllocator TYPE_IDS = new IdAllocator("last.id.type");
+
     public static int getNextPaymentId() {
-        return getNextId("last.id.payment");
+        return PAYMENT_IDS.next();
     }
 
     public static int getNextLocationId() {
-        return getNextId("last.id.location");
+        return LOCATION_IDS.next();
     }
 
     public static int getNextTypeId() {
-        return getNextId("last.id.type");
+        return TYPE_IDS.next();
+    }
+
+    /**
+     * Keeps new payment ids above the highest id found in the data files.
+     */
+    public static void advancePaymentIds(int lastUsedId) {
+        PAYMENT_IDS.advanceTo(lastUsedId);
     }
 
-    private static int getNextId(String configKey) {
+    public static void advanceLocationIds(int lastUsedId) {
+        LOCATION_IDS.advanceTo(lastUsedId);
+    }
+
+    public static void advanceTypeIds(int lastUsedId) {
+        TYPE_IDS.advanceTo(lastUsedId);
+    }
+
+    public static String getConfigValue(String key, String defaultValue) {
         try {
             Properties props = new Properties();
             try (FileReader reader = new FileReader(CONFIG_FILE)) {
                 props.load(reader);
             }
-            String value = props.getProperty(configKey, "0");
-            return Integer.parseInt(value) + 1;
-        } catch (Exception e) {
-            return 1;
+            return props.getProperty(key, defaultValue);
+        } catch (IOException e) {
+            return defaultValue;
         }
     }
 
-    private static void updateConfig(String key, String value) {
+    /**
+     * Sets one key in config.properties. Loading, changing and storing happen
+     * under the same lock as every other file write, so concurrent updates of
+     * different keys cannot drop each other.
+     */
+    static synchronized void updateConfig(String key, String value) {
         try {
             Properties props = new Properties();
             try (FileReader reader = new FileReader(CONFIG_FILE)) {
                 props.load(reader);
             }
             props.setProperty(key, value);
-            try (FileWriter writer = new FileWriter(CONFIG_FILE)) {
-                props.store(writer, "Payment Tracker Configuration");
-            }
+            writeAtomically(Paths.get(CONFIG_FILE),
+                    writer -> props.store(writer, "Payment Tracker Configuration"));
         } catch (IOException e) {
             System.err.println("Error updating config: " + e.getMessage());
         }
     }
 
+    /**
+     * Receives the progress of a backup running on a background thread.
+     */
+    public interface BackupProgress {
+        /**
+         * Called after every file with the number of files done so far.
+         */
+        void update(int done, int total);
+
+        /**
+         * Checked between files; a cancelled backup is removed again.
+         */
+        boolean isCancelled();
+    }
+
+    private static final BackupProgress NO_PROGRESS = new BackupProgress() {
+        @Override
+        public void update(int done, int total) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
     // Backup method with auto-backup
-    public static void createBackup() throws IOException {
+    public static Path createBackup() throws IOException {
+        return createBackup(NO_PROGRESS);
+    }
+
+    /**
+     * Creates a backup and reports its progress.
+     *
+     * @throws CancellationException if the backup was cancelled
+     */
+    public static Path createBackup(BackupProgress progress) throws IOException {
         String timestamp = java.time.LocalDateTime.now()
                 .format(java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-        Path backupDir = Paths.get(DATA_DIR, "backup_" + timestamp);
-        Files.createDirectories(backupDir);
-
-        // Copy all CSV files
-        Files.copy(Paths.get(PAYMENTS_FILE), backupDir.resolve("payments.csv"));
-        Files.copy(Paths.get(LOCATIONS_FILE), backupDir.resolve("locations.csv"));
-        Files.copy(Paths.get(TYPES_FILE), backupDir.resolve("types.csv"));
-        Files.copy(Paths.get(CONFIG_FILE), backupDir.resolve("config.properties"));
+        // Automatic and manual backups can start within the same second
+        String name = "backup_" + timestamp;
+        for (int i = 2; Files.exists(Paths.get(DATA_DIR, name))
+                || Files.exists(Paths.get(DATA_DIR, name + ".zip")); i++) {
+            name = "backup_" + timestamp + "_" + i;
+        }
+        Path backup;
+        BackupStore store = new BackupStore(Paths.get(BACKUP_STORE_DIR));
+
+        if (Boolean.parseBoolean(getConfigValue("backup.compress", "false"))) {
+            backup = Paths.get(DATA_DIR, name + ".zip");
+            writeBackupArchive(getBackupFiles(), backup, progress);
+        } else {
+            backup = Paths.get(DATA_DIR, name);
+            Path previousBackup = getLatestBackupDirectory();
+            Files.createDirectories(backup);
+            try {
+                // Files unchanged since an earlier backup are linked, not copied
+                store.backup(getBackupFiles(), backup, previousBackup, progress);
+            } catch (CancellationException e) {
+                deleteDirectory(backup.toFile());
+                throw e;
+            }
+        }
 
         // Clean up old backups if auto-backup is enabled
         cleanOldBackups();
+        try {
+            List<Path> remaining = new ArrayList<>();
+            for (File file : listBackups()) {
+                if (file.isDirectory()) {
+                    remaining.add(file.toPath());
+                }
+            }
+            store.removeUnreferenced(remaining);
+        } catch (IOException e) {
+            System.err.println("Error cleaning backup store: " + e.getMessage());
+        }
+
+        System.out.println("Backup created: " + backup);
+        return backup;
+    }
+
+    /**
+     * Streams the files into a zip archive. The archive is written under a
+     * temporary name and renamed once complete.
+     */
+    private static void writeBackupArchive(Map<String, Path> files, Path archive, BackupProgress progress)
+            throws IOException {
+        Path temp = archive.resolveSibling(archive.getFileName() + ".tmp");
+        try {
+            try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                int done = 0;
+                for (Map.Entry<String, Path> file : files.entrySet()) {
+                    if (progress.isCancelled()) {
+                        throw new CancellationException("Backup cancelled");
+                    }
+                    zip.putNextEntry(new ZipEntry(file.getKey()));
+                    Files.copy(file.getValue(), zip);
+                    zip.closeEntry();
+                    progress.update(++done, files.size());
+                }
+            }
+            Files.move(temp, archive);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Replaces the data files with the ones in a backup directory or zip
+     * archive. Payment files of other storage formats that are not in the
+     * backup are removed, so only the restored data is loaded afterwards.
+     * The backup is first copied to a staging directory; the current files
+     * are only touched once the whole backup was read. Callers have to
+     * reload all data.
+     */
+    public static void restoreBackup(Path backup) throws IOException {
+        Path staging = Paths.get(RESTORE_STAGING_DIR);
+        try {
+            deleteDirectory(staging.toFile());
+            Files.createDirectories(staging);
+            stageBackup(backup, staging);
+            replaceDataFiles(staging);
+        } finally {
+            deleteDirectory(staging.toFile());
+            // The restored config holds the backup's id counters
+            PAYMENT_IDS.reload();
+            LOCATION_IDS.reload();
+            TYPE_IDS.reload();
+        }
+    }
+
+    private static void stageBackup(Path backup, Path staging) throws IOException {
+        if (Files.isDirectory(backup)) {
+            Map<String, Path> files = new LinkedHashMap<>();
+            try (Stream<Path> paths = Files.walk(backup)) {
+                paths.filter(Files::isRegularFile).forEach(file -> files.put(
+                        backup.relativize(file).toString().replace(File.separatorChar, '/'), file));
+            }
+            checkBackupContents(backup, files.keySet());
+            for (Map.Entry<String, Path> file : files.entrySet()) {
+                stageFile(staging, file.getKey(), out -> Files.copy(file.getValue(), out));
+            }
+            return;
+        }
+
+        try (ZipFile zip = new ZipFile(backup.toFile())) {
+            List<String> names = new ArrayList<>();
+            zip.stream().filter(entry -> !entry.isDirectory()).forEach(entry -> names.add(entry.getName()));
+            checkBackupContents(backup, names);
+            for (String name : names) {
+                ZipEntry entry = zip.getEntry(name);
+                stageFile(staging, name, out -> {
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        in.transferTo(out);
+                    }
+                });
+            }
+        }
+    }
 
-        System.out.println("Backup created: " + backupDir);
+    private static void checkBackupContents(Path backup, Collection<String> names) throws IOException {
+        // Payments are in payments.csv, payments.bin or year partitions
+        boolean hasPayments = names.contains("payments.csv") || names.contains("payments.bin")
+                || names.stream().anyMatch(name -> name.startsWith("payments/"));
+        if (!names.contains("locations.csv") || !names.contains("types.csv") || !hasPayments) {
+            throw new IOException("Not a backup: " + backup);
+        }
+    }
+
+    // Only data files are restored, never paths outside the data directory
+    private static void stageFile(Path staging, String name, OutputBody body) throws IOException {
+        Path target;
+        if (name.matches("payments/[\\w-]+\\.csv")) {
+            target = staging.resolve(name);
+            Files.createDirectories(target.getParent());
+        } else if (Arrays.asList("payments.csv", "locations.csv", "types.csv", "config.properties",
+                "payments.journal", "payments.journal.compacting", "payments.bin").contains(name)) {
+            target = staging.resolve(name);
+        } else {
+            return;
+        }
+        writeStreamAtomically(target, body);
+    }
+
+    /**
+     * Moves the staged files into the data directory. The files they replace
+     * and the payment files of other formats are moved aside first, and moved
+     * back if anything fails, so a failed restore keeps the current data.
+     */
+    private static void replaceDataFiles(Path staging) throws IOException {
+        Path dataDir = Paths.get(DATA_DIR);
+        Path aside = Paths.get(RESTORE_ASIDE_DIR);
+        deleteDirectory(aside.toFile());
+        Files.createDirectories(aside);
+
+        // Top-level names only; partitions move with the payments directory
+        Set<String> staged = new LinkedHashSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(staging)) {
+            for (Path file : files) {
+                staged.add(file.getFileName().toString());
+            }
+        }
+        Set<String> replaced = new LinkedHashSet<>(staged);
+        replaced.addAll(Arrays.asList("payments.journal", "payments.journal.compacting", "payments.bin",
+                Paths.get(PAYMENT_PARTITIONS_DIR).getFileName().toString()));
+
+        List<String> movedAside = new ArrayList<>();
+        List<String> movedIn = new ArrayList<>();
+        try {
+            for (String name : replaced) {
+                if (Files.exists(dataDir.resolve(name))) {
+                    moveFile(dataDir.resolve(name), aside.resolve(name));
+                    movedAside.add(name);
+                }
+            }
+            for (String name : staged) {
+                moveFile(staging.resolve(name), dataDir.resolve(name));
+                movedIn.add(name);
+            }
+        } catch (IOException e) {
+            for (String name : movedIn) {
+                deleteDirectory(dataDir.resolve(name).toFile());
+            }
+            for (String name : movedAside) {
+                try {
+                    moveFile(aside.resolve(name), dataDir.resolve(name));
+                } catch (IOException rollback) {
+                    System.err.println("Error moving back " + name + ", a copy is kept in "
+                            + RESTORE_ASIDE_DIR + ": " + rollback.getMessage());
+                    e.addSuppressed(rollback);
+                }
+            }
+            if (e.getSuppressed().length == 0) {
+                deleteDirectory(aside.toFile());
+            }
+            throw e;
+        }
+        syncDirectory(dataDir.toAbsolutePath());
+        deleteDirectory(aside.toFile());
+        // Snapshots of the replaced payments are never used again
+        deleteSnapshots(null);
+    }
+
+    private static void moveFile(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Returns the data files to back up, keyed by their path inside a
+     * backup.
+     */
+    private static Map<String, Path> getBackupFiles() throws IOException {
+        Map<String, Path> files = new LinkedHashMap<>();
+        for (String filename : new String[] { PAYMENTS_FILE, LOCATIONS_FILE, TYPES_FILE, CONFIG_FILE,
+                // Journaled payment changes not yet compacted into payments.csv
+                PAYMENTS_JOURNAL_FILE + ".compacting", PAYMENTS_JOURNAL_FILE,
+                // Binary payment file when used instead of payments.csv
+                PAYMENTS_BINARY_FILE }) {
+            Path file = Paths.get(filename);
+            if (Files.exists(file)) {
+                files.put(file.getFileName().toString(), file);
+            }
+        }
+        for (String partition : listPaymentPartitions()) {
+            files.put("payments/" + partition + ".csv", Paths.get(PAYMENT_PARTITIONS_DIR, partition + ".csv"));
+        }
+        return files;
+    }
+
+    // Backup directories and archives, oldest first
+    private static List<File> listBackups() {
+        File[] backups = new File(DATA_DIR).listFiles((dir, name) -> name.startsWith("backup_")
+                && (name.endsWith(".zip") || new File(dir, name).isDirectory()));
+        if (backups == null) {
+            return new ArrayList<>();
+        }
+        // Sort by name (which includes timestamp)
+        Arrays.sort(backups);
+        return new ArrayList<>(Arrays.asList(backups));
+    }
+
+    private static Path getLatestBackupDirectory() {
+        List<File> backups = listBackups();
+        for (int i = backups.size() - 1; i >= 0; i--) {
+            if (backups.get(i).isDirectory()) {
+                return backups.get(i).toPath();
+            }
+        }
+        return null;
     }
 
     private static void cleanOldBackups() {
@@ -234,18 +894,13 @@ public class FileStorage {
 
             int maxBackups = Integer.parseInt(props.getProperty("backup.max", "10"));
 
-            File dataDir = new File(DATA_DIR);
-            File[] backupDirs = dataDir
-                    .listFiles((dir, name) -> name.startsWith("backup_") && new File(dir, name).isDirectory());
-
-            if (backupDirs != null && backupDirs.length > maxBackups) {
-                // Sort by name (which includes timestamp)
-                Arrays.sort(backupDirs);
+            List<File> backups = listBackups();
 
+            if (backups.size() > maxBackups) {
                 // Delete oldest backups
-                for (int i = 0; i < backupDirs.length - maxBackups; i++) {
-                    deleteDirectory(backupDirs[i]);
-                    System.out.println("Deleted old backup: " + backupDirs[i].getName());
+                for (int i = 0; i < backups.size() - maxBackups; i++) {
+                    deleteDirectory(backups.get(i));
+                    System.out.println("Deleted old backup: " + backups.get(i).getName());
                 }
             }
         } catch (Exception e) {
@@ -0,0 +1,77 @@
+package data;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out ids from an in-memory counter.
+ *
+ * The config file is read once. Instead of the last used id it stores the
+ * end of the block of ids reserved so far, and is only rewritten when a
+ * block is used up. Ids of a block that was not fully used before the
+ * program stopped are skipped after a restart.
+ */
+class IdAllocator {
+    private static final int BLOCK_SIZE = 32;
+
+    private final String configKey;
+    private final AtomicInteger lastId;
+    private volatile int reservedUpTo;
+
+    IdAllocator(String configKey) {
+        this.configKey = configKey;
+        int stored = readConfig();
+        this.lastId = new AtomicInteger(stored);
+        this.reservedUpTo = stored;
+    }
+
+    int next() {
+        int id = lastId.incrementAndGet();
+        if (id > reservedUpTo) {
+            reserve(id);
+        }
+        return id;
+    }
+
+    /**
+     * Makes sure later ids are above the given one, e.g. the highest id
+     * found in the data files.
+     */
+    void advanceTo(int id) {
+        lastId.accumulateAndGet(id, Math::max);
+        if (id > reservedUpTo) {
+            // Payments not loaded yet may use ids up to this one as well
+            reserve(id);
+        }
+    }
+
+    /**
+     * Re-reads the config after a restored backup replaced it. The higher of
+     * the restored and the current reservation is kept, in memory and in the
+     * config, so no id is handed out twice.
+     */
+    synchronized void reload() {
+        int stored = readConfig();
+        if (stored > reservedUpTo) {
+            reservedUpTo = stored;
+        } else if (stored < reservedUpTo) {
+            FileStorage.updateConfig(configKey, String.valueOf(reservedUpTo));
+        }
+    }
+
+    private int readConfig() {
+        try {
+            return Integer.parseInt(FileStorage.getConfigValue(configKey, "0"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private synchronized void reserve(int id) {
+        if (id <= reservedUpTo) {
+            return;
+        }
+        int upTo = id + BLOCK_SIZE - 1;
+        FileStorage.updateConfig(configKey, String.valueOf(upTo));
+        reservedUpTo = upTo;
+    }
+}
@@ -0,0 +1,24 @@
+package data;
+
+import models.PaymentLocation;
+
+/**
+ * A location was added, updated or deleted through LocationManager.
+ */
+public final class LocationChangeEvent {
+    private final ChangeKind kind;
+    private final PaymentLocation location;
+
+    LocationChangeEvent(ChangeKind kind, PaymentLocation location) {
+        this.kind = kind;
+        this.location = location;
+    }
+
+    public ChangeKind getKind() {
+        return kind;
+    }
+
+    public PaymentLocation getLocation() {
+        return location;
+    }
+}
@@ -2,17 +2,19 @@ package data;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
-import models.Payment;
 import models.PaymentLocation;
 
 public class LocationManager {
     private static LocationManager instance;
-    private List<PaymentLocation> locations;
+    // Shared with PaymentManager, indexed by id and name
+    private final ReferenceRegistry<PaymentLocation> locations;
+    // Serializes changes, so ids, the registry and the file stay in step
+    private final ReentrantLock lock = new ReentrantLock();
 
     private LocationManager() {
-        locations = new ArrayList<>();
-        loadLocations();
+        locations = ReferenceData.getInstance().locations;
     }
 
     public static synchronized LocationManager getInstance() {
@@ -22,32 +24,6 @@ public class LocationManager {
         return instance;
     }
 
-    private void loadLocations() {
-        try {
-            List<String[]> locationData = FileStorage.loadLocations();
-            if (locationData.size() <= 1)
-                return; // Only header or empty
-
-            for (int i = 1; i < locationData.size(); i++) {
-                String[] row = locationData.get(i);
-                if (row.length >= 4) {
-                    PaymentLocation location = new PaymentLocation();
-                    location.setId(Integer.parseInt(row[0]));
-                    location.setName(row[1]);
-                    location.setDescription(row[2]);
-                    location.setAddress(row[3]);
-                    locations.add(location);
-                }
-            }
-
-            // Sort by name
-            locations.sort((l1, l2) -> l1.getName().compareToIgnoreCase(l2.getName()));
-
-        } catch (Exception e) {
-            System.err.println("Error loading location data: " + e.getMessage());
-        }
-    }
-
     private void saveLocations() {
         try {
             List<String[]> data = new ArrayList<>();
@@ -55,7 +31,7 @@ public class LocationManager {
             data.add(new String[] { "id", "name", "description", "address" });
 
             // Add location data
-            for (PaymentLocation location : locations) {
+            for (PaymentLocation location : locations.getAll()) {
                 data.add(new String[] {
                         String.valueOf(location.getId()),
                         location.getName(),
@@ -73,59 +49,56 @@ public class LocationManager {
 
     // CRUD Operations
     public int addLocation(PaymentLocation location) {
-        location.setId(FileStorage.getNextLocationId());
-        locations.add(location);
-        saveLocations();
-        PaymentManager.getInstance().refreshData(); // Refresh payment manager cache
+        lock.lock();
+        try {
+            location.setId(FileStorage.getNextLocationId());
+            locations.add(location);
+            saveLocations();
+        } finally {
+            lock.unlock();
+        }
+        ChangeBus.getInstance().publish(new LocationChangeEvent(ChangeKind.ADDED, location));
         return location.getId();
     }
 
     public List<PaymentLocation> getAllLocations() {
-        return new ArrayList<>(locations);
+        return locations.getAll();
     }
 
     public PaymentLocation getLocationById(int id) {
-        for (PaymentLocation location : locations) {
-            if (location.getId() == id) {
-                return location;
-            }
-        }
-        return null;
+        return locations.get(id);
     }
 
     public PaymentLocation getLocationByName(String name) {
-        for (PaymentLocation location : locations) {
-            if (location.getName().equalsIgnoreCase(name)) {
-                return location;
-            }
-        }
-        return null;
+        return locations.getByName(name);
     }
 
     public boolean deleteLocation(int id) {
-        // Check if any payment uses this location
         PaymentManager paymentManager = PaymentManager.getInstance();
-        List<Payment> payments = paymentManager.getAllPayments();
-        for (Payment payment : payments) {
-            if (payment.getLocationId() == id) {
-                return false; // Cannot delete, location is in use
-            }
-        }
-
-        // Remove location
-        for (int i = 0; i < locations.size(); i++) {
-            if (locations.get(i).getId() == id) {
-                locations.remove(i);
-                saveLocations();
-                paymentManager.refreshData(); // Refresh payment manager cache
-                return true;
+        PaymentLocation removed;
+        lock.lock();
+        try {
+            // Checked and removed under the payment manager's write lock, so
+            // no payment can start using the location in between
+            removed = paymentManager.removeLocationIfUnused(id, () -> locations.remove(id));
+            if (removed == null) {
+                return false; // In use or unknown
             }
+            saveLocations();
+        } finally {
+            lock.unlock();
         }
-        return false;
+        ChangeBus.getInstance().publish(new LocationChangeEvent(ChangeKind.DELETED, removed));
+        return true;
     }
 
     public void refreshData() {
-        locations.clear();
-        loadLocations();
+        lock.lock();
+        try {
+            ReferenceData.getInstance().loadLocations();
+        } finally {
+            lock.unlock();
+        }
+        ChangeBus.getInstance().publish(new DataReloadedEvent(LocationManager.class));
     }
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package data;
+
+import java.util.function.Consumer;
+
+import models.Payment;
+import utils.IntIntHashMap;
+
+/**
+ * Serves payments straight from a memory-mapped snapshot file.
+ *
+ * The snapshot is never written to. Payments added or changed after loading
+ * go to a regular store and hide their snapshot record; deleted records are
+ * only dropped from the id index. Payments read from the snapshot are fresh
+ * copies on every call.
+ */
+class MappedPaymentStore implements PaymentStore {
+    private final BinaryPaymentFile.Records records;
+    private final PaymentStore changes;
+    private final IntIntHashMap recordById;
+
+    MappedPaymentStore(BinaryPaymentFile.Records records, PaymentStore changes) {
+        this.records = records;
+        this.changes = changes;
+        this.recordById = new IntIntHashMap(records.size(), -1);
+        for (int i = 0; i < records.size(); i++) {
+            recordById.put(records.id(i), i);
+        }
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return recordById.containsKey(id) || changes.contains(id);
+    }
+
+    @Override
+    public Payment get(int id) {
+        int record = recordById.get(id);
+        return record >= 0 ? records.payment(record) : changes.get(id);
+    }
+
+    @Override
+    public void put(Payment payment) {
+        recordById.remove(payment.getId());
+        changes.put(payment);
+    }
+
+    @Override
+    public void remove(int id) {
+        recordById.remove(id);
+        changes.remove(id);
+    }
+
+    @Override
+    public int size() {
+        return recordById.size() + changes.size();
+    }
+
+    @Override
+    public void clear() {
+        recordById.clear();
+        changes.clear();
+    }
+
+    @Override
+    public void forEach(Consumer<Payment> action) {
+        for (int i = 0; i < records.size(); i++) {
+            if (recordById.get(records.id(i)) == i) {
+                action.accept(records.payment(i));
+            }
+        }
+        changes.forEach(action);
+    }
+
+    @Override
+    public long getAmountCHFMinor(int id) {
+        int record = recordById.get(id);
+        return record >= 0 ? records.amountCHFMinor(record) : changes.getAmountCHFMinor(id);
+    }
+
+    @Override
+    public long getSignedAmountCHFMinor(int id) {
+        int record = recordById.get(id);
+        if (record < 0) {
+            return changes.getSignedAmountCHFMinor(id);
+        }
+        return PaymentStore.signedAmount(records.debitCredit(record), records.amountCHFMinor(record));
+    }
+
+    @Override
+    public int getTypeId(int id) {
+        int record = recordById.get(id);
+        return record >= 0 ? records.typeId(record) : changes.getTypeId(id);
+    }
+}
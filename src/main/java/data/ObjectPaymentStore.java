@@ -0,0 +1,101 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import models.Payment;
+import utils.IntIntHashMap;
+
+/**
+ * Keeps the Payment objects themselves in a list with an id to slot index.
+ * Deleted slots are nulled out and only compacted once they make up a large
+ * share of the list, so deletes never shift the array.
+ */
+class ObjectPaymentStore implements PaymentStore {
+    private final List<Payment> payments = new ArrayList<>();
+    private final IntIntHashMap slotById = new IntIntHashMap(-1);
+    private int deletedSlots;
+
+    @Override
+    public boolean contains(int id) {
+        return slotById.containsKey(id);
+    }
+
+    @Override
+    public Payment get(int id) {
+        int slot = slotById.get(id);
+        return slot >= 0 ? payments.get(slot) : null;
+    }
+
+    @Override
+    public void put(Payment payment) {
+        int slot = slotById.get(payment.getId());
+        if (slot >= 0) {
+            payments.set(slot, payment);
+        } else {
+            slotById.put(payment.getId(), payments.size());
+            payments.add(payment);
+        }
+    }
+
+    @Override
+    public void remove(int id) {
+        int slot = slotById.remove(id);
+        if (slot < 0) {
+            return;
+        }
+        payments.set(slot, null);
+        deletedSlots++;
+        if (deletedSlots > 64 && deletedSlots > payments.size() / 4) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        payments.removeIf(Objects::isNull);
+        deletedSlots = 0;
+        slotById.clear();
+        for (int i = 0; i < payments.size(); i++) {
+            slotById.put(payments.get(i).getId(), i);
+        }
+    }
+
+    @Override
+    public int size() {
+        return slotById.size();
+    }
+
+    @Override
+    public void clear() {
+        payments.clear();
+        slotById.clear();
+        deletedSlots = 0;
+    }
+
+    @Override
+    public void forEach(Consumer<Payment> action) {
+        for (Payment payment : payments) {
+            if (payment != null) {
+                action.accept(payment);
+            }
+        }
+    }
+
+    @Override
+    public long getAmountCHFMinor(int id) {
+        return get(id).getAmountCHFMinor();
+    }
+
+    @Override
+    public long getSignedAmountCHFMinor(int id) {
+        Payment payment = get(id);
+        return PaymentStore.signedAmount(payment.getDebitCreditType(), payment.getAmountCHFMinor());
+    }
+
+    @Override
+    public int getTypeId(int id) {
+        return get(id).getTypeId();
+    }
+}
@@ -0,0 +1,111 @@
+package data;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * Parses a CSV file on the ForkJoin common pool.
+ *
+ * The file is read into memory and cut into chunks that end on a record
+ * boundary, found by a single byte scan that tracks whether the position is
+ * inside a quoted field. Each chunk is decoded, parsed and mapped on its own
+ * thread; the results are handed to the caller in file order on the calling
+ * thread, so the outcome is the same as a sequential read.
+ */
+class ParallelCsvReader {
+    private static final int MIN_CHUNK_SIZE = 256 * 1024;
+    // Chunks have no header line; values are trimmed like in FileStorage.readCSV
+    private static final CSVFormat FORMAT = CSVFormat.DEFAULT.builder().setTrim(true).build();
+
+    private ParallelCsvReader() {
+    }
+
+    /**
+     * Reads the file, skipping its header line. Records the parser maps to
+     * null are dropped.
+     */
+    static <T> void read(Path file, Function<CSVRecord, T> parser, Consumer<T> action) throws IOException {
+        // Read, not mapped: the file is replaced on the next save, which
+        // Windows refuses while a mapping of it is alive
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+
+        int chunkCount = ForkJoinPool.getCommonPoolParallelism() * 4;
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, buffer.limit() / Math.max(chunkCount, 1));
+        List<int[]> chunks = split(buffer, chunkSize);
+
+        List<List<T>> results;
+        try {
+            results = chunks.parallelStream()
+                    .map(chunk -> parse(buffer, chunk[0], chunk[1], parser))
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        for (List<T> result : results) {
+            result.forEach(action);
+        }
+    }
+
+    // Start and end offsets of the chunks after the header line
+    private static List<int[]> split(ByteBuffer buffer, int chunkSize) {
+        List<int[]> chunks = new ArrayList<>();
+        int length = buffer.limit();
+        boolean inQuotes = false;
+        int start = -1;
+        int target = 0;
+
+        for (int i = 0; i < length; i++) {
+            byte b = buffer.get(i);
+            if (b == '"') {
+                // An escaped quote toggles twice and leaves the state as is
+                inQuotes = !inQuotes;
+            } else if (b == '\n' && !inQuotes && i >= target) {
+                if (start >= 0) {
+                    chunks.add(new int[] { start, i + 1 });
+                }
+                start = i + 1;
+                target = start + chunkSize;
+            }
+        }
+        if (start >= 0 && start < length) {
+            chunks.add(new int[] { start, length });
+        }
+        return chunks;
+    }
+
+    private static <T> List<T> parse(ByteBuffer buffer, int start, int end,
+            Function<CSVRecord, T> parser) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(start).limit(end);
+        String text = Charset.defaultCharset().decode(slice).toString();
+        List<T> result = new ArrayList<>();
+
+        try (CSVParser csvParser = FORMAT.parse(new StringReader(text))) {
+            for (CSVRecord record : csvParser) {
+                T value = parser.apply(record);
+                if (value != null) {
+                    result.add(value);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,33 @@
+package data;
+
+import models.Payment;
+
+/**
+ * A payment was added, updated or deleted through PaymentManager.
+ */
+public final class PaymentChangeEvent {
+    private final ChangeKind kind;
+    private final int paymentId;
+    private final Payment payment;
+
+    PaymentChangeEvent(ChangeKind kind, int paymentId, Payment payment) {
+        this.kind = kind;
+        this.paymentId = paymentId;
+        this.payment = payment;
+    }
+
+    public ChangeKind getKind() {
+        return kind;
+    }
+
+    public int getPaymentId() {
+        return paymentId;
+    }
+
+    /**
+     * The payment after the change, or the deleted payment.
+     */
+    public Payment getPayment() {
+        return payment;
+    }
+}
@@ -0,0 +1,153 @@
+package data;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+import utils.IntIntHashMap;
+
+/**
+ * Payment ids grouped into month buckets, each bucket sorted by date and id.
+ *
+ * Range queries only visit the months they overlap and use binary search in
+ * the first and last bucket, so they cost O(log n + k) instead of a full scan.
+ * Mutations only touch a single month. Entries are packed into a long as
+ * (epoch day, id) so the index holds no Payment objects.
+ */
+class PaymentDateIndex {
+    private final NavigableMap<Integer, Bucket> months = new TreeMap<>();
+    // Bucket of every indexed id, so removal works even if the date was edited
+    private final IntIntHashMap monthById = new IntIntHashMap(Integer.MIN_VALUE);
+
+    private static final class Bucket {
+        long[] entries = new long[8];
+        int size;
+    }
+
+    static int monthKey(int year, int month) {
+        return year * 12 + (month - 1);
+    }
+
+    private static int monthKey(LocalDate date) {
+        return monthKey(date.getYear(), date.getMonthValue());
+    }
+
+    private static long pack(long epochDay, int id) {
+        return (epochDay << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    private static int idOf(long entry) {
+        return (int) entry;
+    }
+
+    public void add(int id, LocalDate paymentDate) {
+        int key = monthKey(paymentDate);
+        Bucket bucket = months.computeIfAbsent(key, k -> new Bucket());
+        long entry = pack(paymentDate.toEpochDay(), id);
+        int position = lowerBound(bucket, entry);
+        if (bucket.size == bucket.entries.length) {
+            bucket.entries = Arrays.copyOf(bucket.entries, bucket.size * 2);
+        }
+        System.arraycopy(bucket.entries, position, bucket.entries, position + 1, bucket.size - position);
+        bucket.entries[position] = entry;
+        bucket.size++;
+        monthById.put(id, key);
+    }
+
+    public void remove(int id) {
+        int key = monthById.remove(id);
+        if (key == Integer.MIN_VALUE) {
+            return;
+        }
+        Bucket bucket = months.get(key);
+        for (int i = 0; i < bucket.size; i++) {
+            if (idOf(bucket.entries[i]) == id) {
+                System.arraycopy(bucket.entries, i + 1, bucket.entries, i, bucket.size - i - 1);
+                bucket.size--;
+                break;
+            }
+        }
+        if (bucket.size == 0) {
+            months.remove(key);
+        }
+    }
+
+    public void clear() {
+        months.clear();
+        monthById.clear();
+    }
+
+    public int size() {
+        return monthById.size();
+    }
+
+    /**
+     * Visits the ids of all payments between the two dates (inclusive),
+     * newest first.
+     */
+    public void forEachInRange(LocalDate startDate, LocalDate endDate, IntConsumer action) {
+        if (startDate.isAfter(endDate)) {
+            return;
+        }
+        long from = pack(startDate.toEpochDay(), 0);
+        long to = pack(endDate.toEpochDay() + 1, 0);
+
+        for (Map.Entry<Integer, Bucket> entry : months
+                .subMap(monthKey(startDate), true, monthKey(endDate), true)
+                .descendingMap().entrySet()) {
+            Bucket bucket = entry.getValue();
+            int first = lowerBound(bucket, from);
+            int last = lowerBound(bucket, to);
+            for (int i = last - 1; i >= first; i--) {
+                action.accept(idOf(bucket.entries[i]));
+            }
+        }
+    }
+
+    /**
+     * Visits the ids of one month, newest first.
+     */
+    public void forEachInMonth(int year, int month, IntConsumer action) {
+        Bucket bucket = months.get(monthKey(year, month));
+        if (bucket == null) {
+            return;
+        }
+        for (int i = bucket.size - 1; i >= 0; i--) {
+            action.accept(idOf(bucket.entries[i]));
+        }
+    }
+
+    /**
+     * Visits the ids of all payments, newest first.
+     */
+    public void forEachDescending(IntConsumer action) {
+        for (Bucket bucket : months.descendingMap().values()) {
+            for (int i = bucket.size - 1; i >= 0; i--) {
+                action.accept(idOf(bucket.entries[i]));
+            }
+        }
+    }
+
+    public LocalDate getFirstDate() {
+        return months.isEmpty() ? null
+                : LocalDate.ofEpochDay(months.firstEntry().getValue().entries[0] >> 32);
+    }
+
+    // First position in the bucket whose entry is not below the given one
+    private static int lowerBound(Bucket bucket, long entry) {
+        int low = 0;
+        int high = bucket.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (bucket.entries[mid] < entry) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
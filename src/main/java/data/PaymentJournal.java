@@ -0,0 +1,206 @@
+package data;
+
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * Append-only log of payment mutations kept next to payments.csv.
+ *
+ * Each mutation is written as one CSV record: the operation followed by the
+ * payment row (or only the id for deletes). On startup the journal is replayed
+ * on top of payments.csv. Once the journal grows past the configured size it
+ * is rotated and payments.csv is rewritten on a background thread.
+ */
+class PaymentJournal {
+    static final String ADD = "ADD";
+    static final String UPDATE = "UPDATE";
+    static final String DELETE = "DELETE";
+
+    private static final long DEFAULT_COMPACT_THRESHOLD = 1024 * 1024;
+
+    private final Path journalFile;
+    private final Path compactingFile;
+    private final long compactThreshold;
+    private final ExecutorService compactor;
+    private volatile boolean compacting;
+
+    PaymentJournal() {
+        this(Paths.get(FileStorage.PAYMENTS_JOURNAL_FILE), parseThreshold(
+                FileStorage.getConfigValue("journal.compact.threshold", String.valueOf(DEFAULT_COMPACT_THRESHOLD))));
+    }
+
+    PaymentJournal(Path journalFile, long compactThreshold) {
+        this.journalFile = journalFile;
+        this.compactingFile = journalFile.resolveSibling(journalFile.getFileName() + ".compacting");
+        this.compactThreshold = compactThreshold;
+        this.compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "payment-journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static long parseThreshold(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return DEFAULT_COMPACT_THRESHOLD;
+        }
+    }
+
+    /**
+     * Appends records made of the operation followed by the row.
+     */
+    public synchronized void append(List<String[]> records) throws IOException {
+        try (FileWriter writer = new FileWriter(journalFile.toFile(), true);
+                CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT)) {
+            for (String[] record : records) {
+                csvPrinter.printRecord((Object[]) record);
+            }
+        }
+    }
+
+    /**
+     * Replays the rotated journal (if a compaction did not finish) and then
+     * the live journal, in the order the mutations were written.
+     */
+    public synchronized void replay(BiConsumer<String, String[]> handler) throws IOException {
+        replayFile(compactingFile, handler);
+        replayFile(journalFile, handler);
+    }
+
+    private void replayFile(Path file, BiConsumer<String, String[]> handler) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        try (FileReader reader = new FileReader(file.toFile());
+                CSVParser csvParser = CSVFormat.DEFAULT.parse(reader)) {
+            for (CSVRecord record : csvParser) {
+                if (record.size() < 2) {
+                    continue; // Torn write at the end of the log
+                }
+                String[] row = new String[record.size() - 1];
+                for (int i = 1; i < record.size(); i++) {
+                    row[i - 1] = record.get(i);
+                }
+                handler.accept(record.get(0), row);
+            }
+        }
+    }
+
+    public boolean needsCompaction() {
+        if (compacting) {
+            return false;
+        }
+        try {
+            return Files.exists(journalFile) && Files.size(journalFile) >= compactThreshold;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Rotates the journal and rewrites payments.csv from the given rows in the
+     * background. The rows must already contain every journaled mutation.
+     */
+    public synchronized void compact(List<String[]> paymentRows) {
+        if (compacting) {
+            return;
+        }
+
+        try {
+            rotate();
+        } catch (IOException e) {
+            System.err.println("Error rotating payment journal: " + e.getMessage());
+            return;
+        }
+
+        compacting = true;
+        compactor.submit(() -> {
+            try {
+                FileStorage.savePayments(paymentRows);
+                Files.deleteIfExists(compactingFile);
+            } catch (IOException e) {
+                // Keep the rotated journal, it is replayed on the next start
+                System.err.println("Error compacting payment journal: " + e.getMessage());
+            } finally {
+                compacting = false;
+            }
+        });
+    }
+
+    private void rotate() throws IOException {
+        if (!Files.exists(journalFile)) {
+            return;
+        }
+
+        if (Files.exists(compactingFile)) {
+            // A previous compaction failed; keep its records in front of ours
+            Files.write(compactingFile, Files.readAllBytes(journalFile), StandardOpenOption.APPEND);
+            Files.delete(journalFile);
+        } else {
+            Files.move(journalFile, compactingFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Rewrites payments.csv synchronously and drops all journal files. Used
+     * when appending fails or a rotated journal is left over from a crash.
+     */
+    public synchronized void rewrite(List<String[]> paymentRows) throws IOException {
+        awaitCompaction();
+        FileStorage.savePayments(paymentRows);
+        Files.deleteIfExists(compactingFile);
+        Files.deleteIfExists(journalFile);
+    }
+
+    /**
+     * Drops all journal files once their mutations are stored elsewhere.
+     */
+    public synchronized void discard() throws IOException {
+        awaitCompaction();
+        Files.deleteIfExists(compactingFile);
+        Files.deleteIfExists(journalFile);
+    }
+
+    /**
+     * Blocks until a running background compaction has finished writing
+     * payments.csv.
+     */
+    public void awaitCompaction() {
+        try {
+            compactor.submit(() -> {
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Error waiting for journal compaction: " + e.getMessage());
+        }
+    }
+
+    public boolean hasRotatedJournal() {
+        return Files.exists(compactingFile);
+    }
+
+    static boolean hasJournalFiles() {
+        return Files.exists(Paths.get(FileStorage.PAYMENTS_JOURNAL_FILE))
+                || Files.exists(Paths.get(FileStorage.PAYMENTS_JOURNAL_FILE + ".compacting"));
+    }
+}
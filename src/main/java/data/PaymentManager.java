@@ -1,26 +1,85 @@
 package data;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
 
+import models.Money;
 import models.Payment;
+import models.Recurrence;
+import org.apache.commons.csv.CSVRecord;
+import utils.IntLongHashMap;
 
 public class PaymentManager {
     private static PaymentManager instance;
-    private List<Payment> payments;
-    private Map<Integer, String> locationNames;
-    private Map<Integer, String> typeNames;
+    // Queries share the read lock; mutations, reloads and loading cold
+    // partitions take the write lock. The write-behind thread takes the same
+    // locks, so flush() must not be called while holding either.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Payments parsed from the data files; payments is this store or a view
+    // of the snapshot that keeps later changes in it
+    private final PaymentStore store;
+    private PaymentStore payments;
+    private PaymentDateIndex dateIndex;
+    private BalanceAggregates aggregates;
+    // Location and type names, shared with LocationManager and TypeManager
+    private final ReferenceData referenceData;
+    private PaymentJournal journal;
+    private WriteBehindSaver writeBehind;
+    private PaymentPartitions partitions;
+    private boolean binaryFormat;
+    private boolean snapshotEnabled;
+    // Whether the snapshot file holds exactly the loaded payments
+    private boolean snapshotCurrent;
+    // All payments at the current version, built on first use after a change
+    private volatile PaymentSnapshot snapshot;
+    private long version;
+    // Stored recurrence and debit/credit labels of payments whose labels are
+    // unknown, written back unchanged until the payment is edited; filled
+    // by the parser threads as well
+    private final Map<Integer, String[]> unknownLabels = new ConcurrentHashMap<>();
+    // Net change per payment not yet written by the write-behind thread
+    private final Map<Integer, String> pendingChanges = new LinkedHashMap<>();
 
     private PaymentManager() {
-        payments = new ArrayList<>();
-        locationNames = new HashMap<>();
-        typeNames = new HashMap<>();
+        if (Boolean.parseBoolean(FileStorage.getConfigValue("storage.columnar", "false"))) {
+            store = new ColumnarPaymentStore();
+        } else {
+            store = new ObjectPaymentStore();
+        }
+        payments = store;
+        dateIndex = new PaymentDateIndex();
+        aggregates = new BalanceAggregates();
+        referenceData = ReferenceData.getInstance();
+        if (Boolean.parseBoolean(FileStorage.getConfigValue("storage.partitioned", "false"))) {
+            // Partition files are small enough to rewrite, no journal needed
+            partitions = new PaymentPartitions();
+        } else if ("binary".equalsIgnoreCase(FileStorage.getConfigValue("storage.format", "csv"))) {
+            // The binary file is rewritten as a whole, no journal either
+            binaryFormat = true;
+        } else if (Boolean.parseBoolean(FileStorage.getConfigValue("journal.enabled", "false"))) {
+            journal = new PaymentJournal();
+        }
+        if (Boolean.parseBoolean(FileStorage.getConfigValue("persistence.writebehind", "false"))) {
+            writeBehind = new WriteBehindSaver(this::writePendingChanges);
+        }
+        // Partitions already load only what is needed
+        snapshotEnabled = partitions == null
+                && Boolean.parseBoolean(FileStorage.getConfigValue("storage.snapshot", "false"));
         loadData();
     }
 
@@ -33,40 +92,109 @@ public class PaymentManager {
 
     private void loadData() {
         try {
-            // Load locations and types first for name mapping
-            loadLocations();
-            loadTypes();
-
             // Load payments
-            List<String[]> paymentData = FileStorage.loadPayments();
-            if (paymentData.size() <= 1)
-                return; // Only header or empty
-
-            for (int i = 1; i < paymentData.size(); i++) { // Skip header
-                String[] row = paymentData.get(i);
-                if (row.length >= 12) {
-                    Payment payment = new Payment();
-                    payment.setId(Integer.parseInt(row[0]));
-                    payment.setPaymentDate(LocalDate.parse(row[1]));
-                    payment.setDescription(row[2]);
-                    payment.setAmount(new BigDecimal(row[3]));
-                    payment.setCurrency(row[4]);
-                    payment.setAmountCHF(new BigDecimal(row[5]));
-                    if (!row[6].isEmpty()) {
-                        payment.setExchangeRate(new BigDecimal(row[6]));
-                    }
-                    payment.setRecurrence(row[7]);
-                    payment.setDebitCredit(row[8]);
-                    payment.setLocationId(Integer.parseInt(row[9]));
-                    payment.setTypeId(Integer.parseInt(row[10]));
-                    payment.setCreatedAt(LocalDate.parse(row[11]));
+            payments = store;
+            snapshotCurrent = false;
+            if (snapshotEnabled && loadSnapshot()) {
+                return;
+            }
+            boolean partitionsOnDisk = FileStorage.hasPaymentPartitions();
+            boolean binaryOnDisk = !partitionsOnDisk && BinaryPaymentFile.exists();
+            PaymentJournal replayJournal = journal;
+            if (replayJournal == null && PaymentJournal.hasJournalFiles()) {
+                // Journaling was switched off; fold the old journal into the payment files
+                replayJournal = new PaymentJournal();
+            }
+            if (replayJournal != null) {
+                replayJournal.awaitCompaction(); // payments.csv may still be written
+            }
+            List<Payment> duplicates = new ArrayList<>();
+            Consumer<Payment> collect = payment -> {
+                if (payments.contains(payment.getId())) {
+                    duplicates.add(payment);
+                } else {
+                    payments.put(payment);
+                }
+            };
 
-                    payments.add(payment);
+            if (partitionsOnDisk) {
+                // Older years stay on disk until a query needs them, unless
+                // everything is rewritten below anyway
+                boolean loadAll = partitions == null || replayJournal != null;
+                int currentYear = LocalDate.now().getYear();
+                for (String name : FileStorage.listPaymentPartitions()) {
+                    Integer partition = PaymentPartitions.parse(name);
+                    if (partition == null) {
+                        continue;
+                    }
+                    if (loadAll || partition == PaymentPartitions.RECURRING || partition >= currentYear) {
+                        FileStorage.forEachPaymentInPartition(name, this::parseRecord, collect);
+                    } else {
+                        partitions.markCold(partition);
+                    }
+                }
+            } else if (binaryOnDisk) {
+                BinaryPaymentFile.Records records = BinaryPaymentFile.read();
+                for (int i = 0; i < records.size(); i++) {
+                    collect.accept(records.payment(i));
+                    keepUnknownLabels(records, i);
                 }
+            } else {
+                // Build payments while parsing instead of loading all rows first;
+                // large files are parsed on several threads
+                FileStorage.forEachPayment(this::parseRecord, collect);
+            }
+
+            // Apply mutations not yet compacted into payments.csv
+            if (replayJournal != null) {
+                replayJournal.replay(this::applyJournalRecord);
+            }
+
+            payments.forEach(payment -> {
+                FileStorage.advancePaymentIds(payment.getId());
+                index(payment);
+            });
+
+            // Older files may contain the same id several times; give those
+            // rows fresh ids so every payment can be found by id
+            for (Payment payment : duplicates) {
+                payment.setId(FileStorage.getNextPaymentId());
+                payments.put(payment);
+                index(payment);
             }
 
-            // Sort by payment date descending
-            payments.sort((p1, p2) -> p2.getPaymentDate().compareTo(p1.getPaymentDate()));
+            if (!duplicates.isEmpty()) {
+                System.out.println("Renumbered " + duplicates.size() + " payments with duplicate ids");
+            }
+            // Rewrite everything in the configured format if the storage
+            // format changed, an old or interrupted journal was folded in or
+            // ids were renumbered
+            boolean converted = partitionsOnDisk != (partitions != null) || binaryOnDisk != binaryFormat;
+            if (converted || !duplicates.isEmpty() || (replayJournal != null
+                    && (replayJournal != journal || replayJournal.hasRotatedJournal()))) {
+                if (partitions != null) {
+                    FileStorage.createPaymentPartitions();
+                    payments.forEach(payment -> partitions.markDirty(PaymentPartitions.partitionOf(payment)));
+                    savePartitions();
+                } else if (binaryFormat) {
+                    BinaryPaymentFile.write(encodePayments());
+                } else if (replayJournal != null) {
+                    replayJournal.rewrite(buildPaymentRows());
+                } else {
+                    FileStorage.savePayments(buildPaymentRows());
+                }
+
+                if (replayJournal != null && replayJournal != journal) {
+                    replayJournal.discard();
+                }
+                if (partitionsOnDisk && partitions == null) {
+                    FileStorage.deletePaymentPartitions();
+                } else if (binaryOnDisk && !binaryFormat) {
+                    BinaryPaymentFile.delete();
+                } else if (!partitionsOnDisk && !binaryOnDisk && converted) {
+                    FileStorage.archivePaymentsFile();
+                }
+            }
 
         } catch (Exception e) {
             System.err.println("Error loading payment data: " + e.getMessage());
@@ -74,71 +202,229 @@ public class PaymentManager {
         }
     }
 
-    private void loadLocations() {
+    /**
+     * Uses the snapshot written on the last clean shutdown if no payment file
+     * changed since. The payments stay in the mapped file; only the indexes
+     * are built, from the fixed-width fields.
+     */
+    private boolean loadSnapshot() {
         try {
-            List<String[]> locationData = FileStorage.loadLocations();
-            if (locationData.size() <= 1)
-                return;
-
-            for (int i = 1; i < locationData.size(); i++) {
-                String[] row = locationData.get(i);
-                if (row.length >= 4) {
-                    int id = Integer.parseInt(row[0]);
-                    String name = row[1];
-                    locationNames.put(id, name);
-                }
+            // The stamp is "<snapshot file> <payment files stamp>", so a new
+            // snapshot and its stamp are switched to with one config update
+            String[] stamp = FileStorage.getConfigValue("snapshot.stamp", "").split(" ", 2);
+            Path file = stamp.length == 2 ? FileStorage.getSnapshotFile(stamp[0]) : null;
+            if (file == null || !Files.exists(file)
+                    || (journal != null && journal.hasRotatedJournal())
+                    || !snapshotStamp().equals(stamp[1])) {
+                FileStorage.deleteSnapshots(null);
+                return false;
+            }
+            FileStorage.deleteSnapshots(file);
+            BinaryPaymentFile.Records records = BinaryPaymentFile.map(file.toString());
+            MappedPaymentStore snapshot = new MappedPaymentStore(records, store);
+            for (int i = 0; i < records.size(); i++) {
+                int id = records.id(i);
+                LocalDate paymentDate = LocalDate.ofEpochDay(records.paymentDay(i));
+                keepUnknownLabels(records, i);
+                FileStorage.advancePaymentIds(id);
+                dateIndex.add(id, paymentDate);
+                aggregates.add(paymentDate, records.debitCredit(i), records.amountCHFMinor(i),
+                        records.typeId(i), records.locationId(i));
             }
+            payments = snapshot;
+            snapshotCurrent = true;
+            return true;
         } catch (Exception e) {
-            System.err.println("Error loading location data: " + e.getMessage());
+            System.err.println("Ignoring payment snapshot: " + e.getMessage());
+            store.clear();
+            unknownLabels.clear();
+            dateIndex.clear();
+            aggregates.clear();
+            return false;
         }
     }
 
-    private void loadTypes() {
+    // Identifies the payment files and storage mode the snapshot was taken of
+    private String snapshotStamp() throws IOException {
+        String mode = binaryFormat ? "binary" : journal != null ? "journal" : "csv";
+        // Snapshots of an older binary version lack fields and are rebuilt
+        return mode + "-" + BinaryPaymentFile.VERSION + "-" + FileStorage.getPaymentFilesStamp();
+    }
+
+    private void index(Payment payment) {
+        dateIndex.add(payment.getId(), payment.getPaymentDate());
+        aggregates.add(payment);
+        if (partitions != null) {
+            partitions.track(payment);
+        }
+    }
+
+    /**
+     * Loads the year partitions between the two years that are still on
+     * disk only. Must be called before taking the read lock, as loading
+     * needs the write lock.
+     */
+    private void ensureLoaded(int fromYear, int toYear) {
+        if (partitions == null || !hasColdPartitions(fromYear, toYear)) {
+            return;
+        }
+        lock.writeLock().lock();
         try {
-            List<String[]> typeData = FileStorage.loadTypes();
-            if (typeData.size() <= 1)
-                return;
+            for (int partition : partitions.getColdYears(fromYear, toYear)) {
+                loadPartition(partition);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
 
-            for (int i = 1; i < typeData.size(); i++) {
-                String[] row = typeData.get(i);
-                if (row.length >= 3) {
-                    int id = Integer.parseInt(row[0]);
-                    String name = row[1];
-                    typeNames.put(id, name);
+    private void ensureAllLoaded() {
+        if (partitions == null || !hasColdPartitions(Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (int partition : partitions.getColdPartitions()) {
+                loadPartition(partition);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean hasColdPartitions(int fromYear, int toYear) {
+        lock.readLock().lock();
+        try {
+            return !partitions.getColdYears(fromYear, toYear).isEmpty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void loadPartition(int partition) {
+        String name = PaymentPartitions.name(partition);
+        try {
+            List<Payment> loaded = new ArrayList<>();
+            FileStorage.forEachPaymentInPartition(name, this::parseRecord, loaded::add);
+            partitions.markLoaded(partition);
+            invalidateSnapshot();
+
+            for (Payment payment : loaded) {
+                if (payments.contains(payment.getId())) {
+                    payment.setId(FileStorage.getNextPaymentId());
+                    partitions.markDirty(partition);
+                } else {
+                    FileStorage.advancePaymentIds(payment.getId());
                 }
+                payments.put(payment);
+                index(payment);
             }
         } catch (Exception e) {
-            System.err.println("Error loading type data: " + e.getMessage());
+            // The partition stays cold and is never overwritten
+            System.err.println("Error loading payments of " + name + ": " + e.getMessage());
+        }
+    }
+
+    private Payment fromRow(String[] row) {
+        return fromFields(i -> row[i]);
+    }
+
+    private Payment parseRecord(CSVRecord record) {
+        // Skip the header row that savePayments writes as data
+        if (record.size() < 12 || "id".equals(record.get(0))) {
+            return null;
+        }
+        return fromFields(record::get);
+    }
+
+    private Payment fromFields(IntFunction<String> field) {
+        Payment payment = new Payment();
+        payment.setId(Integer.parseInt(field.apply(0)));
+        payment.setPaymentDate(LocalDate.parse(field.apply(1)));
+        payment.setDescription(field.apply(2));
+        payment.setAmount(new BigDecimal(field.apply(3)));
+        payment.setCurrency(field.apply(4));
+        payment.setAmountCHF(new BigDecimal(field.apply(5)));
+        String exchangeRate = field.apply(6);
+        if (!exchangeRate.isEmpty()) {
+            payment.setExchangeRate(new BigDecimal(exchangeRate));
+        }
+        payment.setRecurrence(field.apply(7));
+        payment.setDebitCredit(field.apply(8));
+        payment.setLocationId(Integer.parseInt(field.apply(9)));
+        payment.setTypeId(Integer.parseInt(field.apply(10)));
+        payment.setCreatedAt(LocalDate.parse(field.apply(11)));
+        if (payment.getRecurrenceType() == null || payment.getDebitCreditType() == null) {
+            // Counts toward neither balance, but the stored values are kept
+            System.err.println("Payment " + payment.getId() + " has an unknown recurrence or debit/credit: \""
+                    + field.apply(7) + "\", \"" + field.apply(8) + "\"");
+            unknownLabels.put(payment.getId(), new String[] { field.apply(7), field.apply(8) });
+        }
+        return payment;
+    }
+
+    // Labels the binary format kept for payments with unknown enums, see fromFields
+    private void keepUnknownLabels(BinaryPaymentFile.Records records, int record) {
+        String[] labels = records.unknownLabels(record);
+        if (labels != null) {
+            unknownLabels.put(records.id(record), labels);
+        }
+    }
+
+    private String[] toRow(Payment payment) {
+        String[] stored = unknownLabels.get(payment.getId());
+        String recurrence = payment.getRecurrence();
+        String debitCredit = payment.getDebitCredit();
+        if (stored != null) {
+            recurrence = recurrence != null ? recurrence : stored[0];
+            debitCredit = debitCredit != null ? debitCredit : stored[1];
+        }
+        return new String[] {
+                String.valueOf(payment.getId()),
+                payment.getPaymentDate().toString(),
+                payment.getDescription(),
+                payment.getAmount().toString(),
+                payment.getCurrency(),
+                payment.getAmountCHF().toString(),
+                payment.getExchangeRate() != null ? payment.getExchangeRate().toString() : "",
+                recurrence,
+                debitCredit,
+                String.valueOf(payment.getLocationId()),
+                String.valueOf(payment.getTypeId()),
+                payment.getCreatedAt().toString()
+        };
+    }
+
+    private List<String[]> buildPaymentRows() {
+        List<String[]> data = new ArrayList<>();
+        // Add header
+        data.add(new String[] { "id", "paymentDate", "description", "amount", "currency",
+                "amountCHF", "exchangeRate", "recurrence", "debitCredit",
+                "locationId", "typeId", "createdAt" });
+
+        // Add payment data, newest first
+        dateIndex.forEachDescending(id -> data.add(toRow(payments.get(id))));
+        return data;
+    }
+
+    // Payments newest first in the binary format
+    private byte[] encodePayments() {
+        lock.readLock().lock();
+        try {
+            return BinaryPaymentFile.encode(materialize(payments.size(), dateIndex::forEachDescending),
+                    unknownLabels);
+        } finally {
+            lock.readLock().unlock();
         }
     }
 
     private void savePayments() {
         try {
-            List<String[]> data = new ArrayList<>();
-            // Add header
-            data.add(new String[] { "id", "paymentDate", "description", "amount", "currency",
-                    "amountCHF", "exchangeRate", "recurrence", "debitCredit",
-                    "locationId", "typeId", "createdAt" });
-
-            // Add payment data
-            for (Payment payment : payments) {
-                data.add(new String[] {
-                        String.valueOf(payment.getId()),
-                        payment.getPaymentDate().toString(),
-                        payment.getDescription(),
-                        payment.getAmount().toString(),
-                        payment.getCurrency(),
-                        payment.getAmountCHF().toString(),
-                        payment.getExchangeRate() != null ? payment.getExchangeRate().toString() : "",
-                        payment.getRecurrence(),
-                        payment.getDebitCredit(),
-                        String.valueOf(payment.getLocationId()),
-                        String.valueOf(payment.getTypeId()),
-                        payment.getCreatedAt().toString()
-                });
-            }
-
-            FileStorage.savePayments(data);
+            if (binaryFormat) {
+                BinaryPaymentFile.write(encodePayments());
+            } else {
+                FileStorage.savePayments(buildPaymentRows());
+            }
 
         } catch (Exception e) {
             System.err.println("Error saving payment data: " + e.getMessage());
@@ -146,171 +432,628 @@ public class PaymentManager {
         }
     }
 
+    private void applyJournalRecord(String operation, String[] row) {
+        try {
+            if (PaymentJournal.DELETE.equals(operation)) {
+                payments.remove(Integer.parseInt(row[0]));
+                unknownLabels.remove(Integer.parseInt(row[0]));
+            } else if (row.length >= 12) {
+                payments.put(fromRow(row));
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Skipping unreadable journal record: " + e.getMessage());
+        }
+    }
+
+    // May be called on the write-behind thread while the EDT is mutating
+    private List<String[]> snapshotPaymentRows() {
+        lock.readLock().lock();
+        try {
+            return buildPaymentRows();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Persists a single mutation. In journal mode only the changed row is
+     * appended; in write-behind mode the work is left to the background
+     * thread; with partitions only the changed partition is rewritten;
+     * otherwise the whole payment file is rewritten here.
+     */
+    private void persist(String operation, int id) {
+        snapshotCurrent = false;
+        invalidateSnapshot();
+        if (PaymentJournal.DELETE.equals(operation)) {
+            unknownLabels.remove(id);
+        }
+
+        if (writeBehind != null) {
+            if (journal != null) {
+                recordPendingChange(operation, id);
+            }
+            writeBehind.markDirty();
+            return;
+        }
+        if (partitions != null) {
+            try {
+                savePartitions();
+            } catch (IOException e) {
+                System.err.println("Error saving payment data: " + e.getMessage());
+            }
+            return;
+        }
+        if (journal == null) {
+            savePayments();
+            return;
+        }
+        appendToJournal(Collections.singletonList(journalRecord(operation, id)));
+    }
+
+    // Folds the operation into the net change already pending for the id
+    private void recordPendingChange(String operation, int id) {
+        String pending = pendingChanges.get(id);
+        if (PaymentJournal.ADD.equals(pending)) {
+            if (PaymentJournal.DELETE.equals(operation)) {
+                pendingChanges.remove(id); // Never written, nothing to delete
+            }
+            return; // Still an add, with the latest row
+        }
+        pendingChanges.put(id, operation);
+    }
+
+    private String[] journalRecord(String operation, int id) {
+        if (PaymentJournal.DELETE.equals(operation)) {
+            return new String[] { operation, String.valueOf(id) };
+        }
+        String[] row = toRow(payments.get(id));
+        String[] record = new String[row.length + 1];
+        record[0] = operation;
+        System.arraycopy(row, 0, record, 1, row.length);
+        return record;
+    }
+
+    private void appendToJournal(List<String[]> records) {
+        try {
+            journal.append(records);
+            if (journal.needsCompaction()) {
+                journal.compact(snapshotPaymentRows());
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing payment journal: " + e.getMessage());
+            try {
+                journal.rewrite(snapshotPaymentRows());
+            } catch (IOException ex) {
+                System.err.println("Error saving payment data: " + ex.getMessage());
+            }
+        }
+    }
+
+    // Runs on the write-behind thread
+    private void writePendingChanges() throws IOException {
+        if (partitions != null) {
+            savePartitions();
+            return;
+        }
+        if (binaryFormat) {
+            BinaryPaymentFile.write(encodePayments());
+            return;
+        }
+        if (journal == null) {
+            FileStorage.savePayments(snapshotPaymentRows());
+            return;
+        }
+
+        List<String[]> records = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            pendingChanges.forEach((id, operation) -> records.add(journalRecord(operation, id)));
+            pendingChanges.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (!records.isEmpty()) {
+            appendToJournal(records);
+        }
+    }
+
+    /**
+     * Rewrites the partitions changed since the last save. The rows are
+     * built under the write lock and written outside of it when called from
+     * the write-behind thread.
+     */
+    private void savePartitions() throws IOException {
+        Map<Integer, List<String[]>> rowsByPartition = new LinkedHashMap<>();
+        lock.writeLock().lock();
+        try {
+            for (int partition : partitions.takeDirty()) {
+                if (partitions.isCold(partition)) {
+                    System.err.println("Not saving unreadable partition " + PaymentPartitions.name(partition));
+                    continue;
+                }
+                rowsByPartition.put(partition, buildPartitionRows(partition));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        for (Map.Entry<Integer, List<String[]>> entry : rowsByPartition.entrySet()) {
+            try {
+                FileStorage.savePaymentPartition(PaymentPartitions.name(entry.getKey()), entry.getValue());
+            } catch (IOException e) {
+                lock.writeLock().lock();
+                try {
+                    rowsByPartition.keySet().forEach(partitions::markDirty);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                throw e;
+            }
+        }
+    }
+
+    private List<String[]> buildPartitionRows(int partition) {
+        List<String[]> data = new ArrayList<>();
+        IntConsumer addRow = id -> {
+            if (partitions.get(id) == partition) {
+                data.add(toRow(payments.get(id)));
+            }
+        };
+
+        // Newest first, like payments.csv
+        if (partition == PaymentPartitions.RECURRING) {
+            dateIndex.forEachDescending(addRow);
+        } else {
+            dateIndex.forEachInRange(LocalDate.of(partition, 1, 1), LocalDate.of(partition, 12, 31), addRow);
+        }
+        return data;
+    }
+
+    private void rebuildAggregates() {
+        aggregates.clear();
+        payments.forEach(aggregates::add);
+    }
+
+    private List<Payment> materialize(int expectedSize, Consumer<IntConsumer> ids) {
+        List<Payment> result = new ArrayList<>(expectedSize);
+        ids.accept(id -> result.add(payments.get(id)));
+        return result;
+    }
+
     // CRUD Operations
     public int addPayment(Payment payment) {
-        payment.setId(FileStorage.getNextPaymentId());
-        payments.add(payment);
-        savePayments();
+        lock.writeLock().lock();
+        try {
+            // The partition file is rewritten, so its other payments must be loaded
+            ensureLoaded(payment.getPaymentDate().getYear(), payment.getPaymentDate().getYear());
+            payment.setId(FileStorage.getNextPaymentId());
+            payments.put(payment);
+            dateIndex.add(payment.getId(), payment.getPaymentDate());
+            aggregates.add(payment);
+            if (partitions != null) {
+                partitions.update(payment);
+            }
+            persist(PaymentJournal.ADD, payment.getId());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        ChangeBus.getInstance().publish(new PaymentChangeEvent(ChangeKind.ADDED, payment.getId(), payment));
         return payment.getId();
     }
 
     public boolean updatePayment(Payment updatedPayment) {
-        for (int i = 0; i < payments.size(); i++) {
-            if (payments.get(i).getId() == updatedPayment.getId()) {
-                payments.set(i, updatedPayment);
-                savePayments();
-                return true;
+        lock.writeLock().lock();
+        try {
+            Payment previous = getPaymentById(updatedPayment.getId());
+            if (previous == null) {
+                return false;
+            }
+            ensureLoaded(updatedPayment.getPaymentDate().getYear(), updatedPayment.getPaymentDate().getYear());
+            payments.put(updatedPayment);
+            dateIndex.remove(updatedPayment.getId());
+            dateIndex.add(updatedPayment.getId(), updatedPayment.getPaymentDate());
+            if (previous != updatedPayment) {
+                aggregates.remove(previous);
+                aggregates.add(updatedPayment);
+            } else {
+                // Edited in place, the old values are gone
+                rebuildAggregates();
             }
+            if (partitions != null) {
+                partitions.update(updatedPayment);
+            }
+            persist(PaymentJournal.UPDATE, updatedPayment.getId());
+        } finally {
+            lock.writeLock().unlock();
         }
-        return false;
+        ChangeBus.getInstance().publish(new PaymentChangeEvent(ChangeKind.UPDATED, updatedPayment.getId(), updatedPayment));
+        return true;
     }
 
     public boolean deletePayment(int id) {
-        for (int i = 0; i < payments.size(); i++) {
-            if (payments.get(i).getId() == id) {
-                payments.remove(i);
-                savePayments();
-                return true;
+        Payment previous;
+        lock.writeLock().lock();
+        try {
+            previous = getPaymentById(id);
+            if (previous == null) {
+                return false;
             }
+            aggregates.remove(previous);
+            payments.remove(id);
+            dateIndex.remove(id);
+            if (partitions != null) {
+                partitions.remove(id);
+            }
+            persist(PaymentJournal.DELETE, id);
+        } finally {
+            lock.writeLock().unlock();
         }
-        return false;
+        ChangeBus.getInstance().publish(new PaymentChangeEvent(ChangeKind.DELETED, id, previous));
+        return true;
     }
 
     public Payment getPaymentById(int id) {
-        for (Payment payment : payments) {
-            if (payment.getId() == id) {
-                return payment;
-            }
+        Payment payment = read(() -> payments.get(id));
+        if (payment == null && partitions != null) {
+            // The id does not tell the year, so look in all partitions
+            ensureAllLoaded();
+            payment = read(() -> payments.get(id));
+        }
+        return payment;
+    }
+
+    // Runs a query under the read lock
+    private <T> T read(Supplier<T> query) {
+        lock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            lock.readLock().unlock();
         }
-        return null;
     }
 
+    /**
+     * Returns all payments, newest first. The list cannot be modified and
+     * is shared with other callers until the next change.
+     */
     public List<Payment> getAllPayments() {
-        return new ArrayList<>(payments);
+        return getSnapshot().getPayments();
+    }
+
+    /**
+     * Returns all payments at the current version. The same snapshot is
+     * returned until payments are added, changed, deleted or reloaded.
+     */
+    public PaymentSnapshot getSnapshot() {
+        ensureAllLoaded();
+        PaymentSnapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        return read(() -> {
+            // Concurrent readers may both build it; either result is the same
+            PaymentSnapshot built = snapshot;
+            if (built == null) {
+                built = new PaymentSnapshot(version, materialize(payments.size(), dateIndex::forEachDescending));
+                snapshot = built;
+            }
+            return built;
+        });
+    }
+
+    // Called under the write lock
+    private void invalidateSnapshot() {
+        version++;
+        snapshot = null;
     }
 
     public List<Payment> getPaymentsByDateRange(LocalDate startDate, LocalDate endDate) {
-        return payments.stream()
-                .filter(p -> !p.getPaymentDate().isBefore(startDate) &&
-                        !p.getPaymentDate().isAfter(endDate))
-                .collect(Collectors.toList());
+        ensureLoaded(startDate.getYear(), endDate.getYear());
+        return read(() -> materialize(16, ids -> dateIndex.forEachInRange(startDate, endDate, ids)));
     }
 
     public List<Payment> getPaymentsByMonth(int year, int month) {
-        return payments.stream()
-                .filter(p -> p.getPaymentDate().getYear() == year &&
-                        p.getPaymentDate().getMonthValue() == month)
-                .collect(Collectors.toList());
+        ensureLoaded(year, year);
+        return read(() -> materialize(16, ids -> dateIndex.forEachInMonth(year, month, ids)));
+    }
+
+    /**
+     * Returns the payments the timeline needs for the date range: those
+     * inside the range plus recurring payments that started before it,
+     * newest first.
+     */
+    public List<Payment> getTimelinePayments(LocalDate startDate, LocalDate endDate) {
+        ensureLoaded(startDate.getYear(), endDate.getYear());
+        return read(() -> {
+            List<Payment> result = new ArrayList<>();
+            LocalDate firstDate = dateIndex.getFirstDate();
+            if (firstDate == null) {
+                return result;
+            }
+            // Cold partitions only hold one-time payments of other years
+            dateIndex.forEachInRange(firstDate, endDate, id -> {
+                Payment payment = payments.get(id);
+                if (!payment.getPaymentDate().isBefore(startDate)
+                        || payment.getRecurrenceType() != Recurrence.ONE_TIME) {
+                    result.add(payment);
+                }
+            });
+            return result;
+        });
     }
 
     public String getLocationName(int locationId) {
-        return locationNames.getOrDefault(locationId, "Unknown");
+        return referenceData.locations.getName(locationId, "Unknown");
     }
 
     public String getTypeName(int typeId) {
-        return typeNames.getOrDefault(typeId, "Unknown");
+        return referenceData.types.getName(typeId, "Unknown");
     }
 
     public Map<Integer, String> getLocationNames() {
-        return new HashMap<>(locationNames);
+        return referenceData.locations.getNames();
     }
 
     public Map<Integer, String> getTypeNames() {
-        return new HashMap<>(typeNames);
+        return referenceData.types.getNames();
     }
 
     // Statistics
     public BigDecimal getTotalAmountByMonth(int year, int month) {
-        return payments.stream()
-                .filter(p -> p.getPaymentDate().getYear() == year &&
-                        p.getPaymentDate().getMonthValue() == month &&
-                        "Debit".equals(p.getDebitCredit()))
-                .map(Payment::getAmountCHF)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        ensureLoaded(year, year);
+        return read(() -> aggregates.getMonthDebits(year, month));
     }
 
-    public Map<String, BigDecimal> getCategoryTotals(LocalDate startDate, LocalDate endDate) {
-        Map<String, BigDecimal> totals = new HashMap<>();
+    public BigDecimal getTotalCreditsByMonth(int year, int month) {
+        ensureLoaded(year, year);
+        return read(() -> aggregates.getMonthCredits(year, month));
+    }
 
-        for (Payment payment : payments) {
-            if (!payment.getPaymentDate().isBefore(startDate) &&
-                    !payment.getPaymentDate().isAfter(endDate)) {
-                String typeName = getTypeName(payment.getTypeId());
-                BigDecimal current = totals.getOrDefault(typeName, BigDecimal.ZERO);
-                totals.put(typeName, current.add(payment.getAmountCHF()));
-            }
+    public int getPaymentCount() {
+        ensureAllLoaded();
+        return read(aggregates::getPaymentCount);
+    }
+
+    public LocalDate getFirstPaymentDate() {
+        ensureAllLoaded();
+        return read(dateIndex::getFirstDate);
+    }
+
+    /**
+     * Returns the total amount in CHF per type id over all payments.
+     */
+    public Map<Integer, BigDecimal> getTypeTotals() {
+        ensureAllLoaded();
+        return read(aggregates::getTypeTotals);
+    }
+
+    /**
+     * Returns the total amount in CHF per location id over all payments.
+     */
+    public Map<Integer, BigDecimal> getLocationTotals() {
+        ensureAllLoaded();
+        return read(aggregates::getLocationTotals);
+    }
+
+    /**
+     * Returns the number of payments with the given location, without
+     * looking at the payments themselves.
+     */
+    public int getLocationUsage(int locationId) {
+        ensureAllLoaded();
+        return read(() -> aggregates.getLocationCount(locationId));
+    }
+
+    public int getTypeUsage(int typeId) {
+        ensureAllLoaded();
+        return read(() -> aggregates.getTypeCount(typeId));
+    }
+
+    /**
+     * Runs the removal if no payment uses the location and returns its
+     * result, otherwise returns null. Payments are only added and changed
+     * under the write lock, so none can start using the location between
+     * the check and the removal.
+     */
+    <T> T removeLocationIfUnused(int locationId, Supplier<T> removal) {
+        ensureAllLoaded();
+        lock.writeLock().lock();
+        try {
+            return aggregates.getLocationCount(locationId) > 0 ? null : removal.get();
+        } finally {
+            lock.writeLock().unlock();
         }
+    }
+
+    <T> T removeTypeIfUnused(int typeId, Supplier<T> removal) {
+        ensureAllLoaded();
+        lock.writeLock().lock();
+        try {
+            return aggregates.getTypeCount(typeId) > 0 ? null : removal.get();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of payments per location id; unused locations are
+     * missing.
+     */
+    public Map<Integer, Integer> getLocationUsageCounts() {
+        ensureAllLoaded();
+        return read(aggregates::getLocationCounts);
+    }
 
-        return totals;
+    public Map<Integer, Integer> getTypeUsageCounts() {
+        ensureAllLoaded();
+        return read(aggregates::getTypeCounts);
+    }
+
+    public Map<String, BigDecimal> getCategoryTotals(LocalDate startDate, LocalDate endDate) {
+        ensureLoaded(startDate.getYear(), endDate.getYear());
+        return read(() -> {
+            IntLongHashMap totalsByType = new IntLongHashMap(0);
+            dateIndex.forEachInRange(startDate, endDate,
+                    id -> totalsByType.addTo(payments.getTypeId(id), payments.getAmountCHFMinor(id)));
+
+            Map<String, BigDecimal> totals = new HashMap<>();
+            totalsByType.forEach((typeId, amount) -> totals.merge(referenceData.types.getName(typeId, "Unknown"),
+                    Money.toBigDecimal(amount), BigDecimal::add));
+
+            return totals;
+        });
     }
 
     public void refreshData() {
+        // Pending changes would be lost by reloading from disk
+        flush();
+        lock.writeLock().lock();
+        try {
+            reload();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        ChangeBus.getInstance().publish(new DataReloadedEvent(PaymentManager.class));
+    }
+
+    /**
+     * Replaces the data files with a backup (directory or zip archive) and
+     * reloads. Pending changes are written first, so they cannot overwrite
+     * the restored files later.
+     */
+    public void restoreBackup(Path backup) throws IOException {
+        flush();
+        lock.writeLock().lock();
+        try {
+            if (journal != null) {
+                journal.awaitCompaction();
+            }
+            FileStorage.restoreBackup(backup);
+            reload();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        ChangeBus.getInstance().publish(new DataReloadedEvent(PaymentManager.class));
+    }
+
+    private void reload() {
+        invalidateSnapshot();
         payments.clear();
-        locationNames.clear();
-        typeNames.clear();
+        unknownLabels.clear();
+        pendingChanges.clear();
+        if (partitions != null) {
+            partitions.clear();
+        }
+        dateIndex.clear();
+        aggregates.clear();
         loadData();
     }
 
+    /**
+     * Writes changes still waiting on the write-behind thread. Must not be
+     * called while holding a lock of this manager.
+     */
+    public void flush() {
+        if (writeBehind != null) {
+            writeBehind.flush();
+        }
+    }
+
+    /**
+     * Called on shutdown: writes pending changes and, if enabled, a snapshot
+     * of all payments for the next start, and forces files still waiting for
+     * a batched fsync to disk. Must not be called while holding a lock of
+     * this manager.
+     */
+    public void close() {
+        flush();
+        if (snapshotEnabled) {
+            writeSnapshot();
+        }
+        // Files written during the last batched fsync interval
+        FileStorage.syncPending();
+    }
+
+    private void writeSnapshot() {
+        if (journal != null) {
+            journal.awaitCompaction(); // The stamp must cover the compacted files
+        }
+        lock.writeLock().lock();
+        try {
+            if (snapshotCurrent) {
+                return;
+            }
+            // Never overwrite the snapshot that may still be mapped
+            Path file = FileStorage.newSnapshotFile();
+            BinaryPaymentFile.write(file.toString(), encodePayments());
+            FileStorage.updateConfig("snapshot.stamp", file.getFileName() + " " + snapshotStamp());
+            snapshotCurrent = true;
+            FileStorage.deleteSnapshots(file);
+        } catch (Exception e) {
+            System.err.println("Error writing payment snapshot: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     // Add these methods to your existing PaymentManager class
 
     public List<TimelineEntry> getTimelineEntries(LocalDate startDate, LocalDate endDate) {
         List<TimelineEntry> entries = new ArrayList<>();
-        BigDecimal runningBalance = BigDecimal.ZERO;
+        long runningBalance = 0;
 
-        // Get all payments within date range
-        List<Payment> allPayments = getAllPayments().stream()
-                .filter(p -> !p.getPaymentDate().isBefore(startDate) &&
-                        !p.getPaymentDate().isAfter(endDate))
-                .collect(java.util.stream.Collectors.toList());
-
-        // Sort by date
-        allPayments.sort((p1, p2) -> p1.getPaymentDate().compareTo(p2.getPaymentDate()));
+        // Get all payments within date range, oldest first
+        List<Payment> allPayments = getPaymentsByDateRange(startDate, endDate);
+        Collections.reverse(allPayments);
 
         // Calculate running balance
         for (Payment payment : allPayments) {
-            if ("Debit".equals(payment.getDebitCredit())) {
-                runningBalance = runningBalance.subtract(payment.getAmountCHF());
-            } else if ("Credit".equals(payment.getDebitCredit())) {
-                runningBalance = runningBalance.add(payment.getAmountCHF());
+            if (payment.isDebit()) {
+                runningBalance -= payment.getAmountCHFMinor();
+            } else if (payment.isCredit()) {
+                runningBalance += payment.getAmountCHFMinor();
             }
 
-            entries.add(new TimelineEntry(payment, runningBalance));
+            entries.add(new TimelineEntry(payment, Money.toBigDecimal(runningBalance)));
         }
 
         return entries;
     }
 
     public BigDecimal getTotalBalance() {
-        BigDecimal balance = BigDecimal.ZERO;
-
-        for (Payment payment : payments) {
-            if ("Debit".equals(payment.getDebitCredit())) {
-                balance = balance.subtract(payment.getAmountCHF());
-            } else if ("Credit".equals(payment.getDebitCredit())) {
-                balance = balance.add(payment.getAmountCHF());
-            }
-        }
-
-        return balance;
+        ensureAllLoaded();
+        return read(aggregates::getTotalBalance);
     }
 
     public Map<String, BigDecimal> getMonthlyBalances(int year) {
-        Map<String, BigDecimal> monthlyBalances = new LinkedHashMap<>();
+        return getMonthlyBalances(year, year);
+    }
 
-        for (int month = 1; month <= 12; month++) {
-            List<Payment> monthlyPayments = getPaymentsByMonth(year, month);
-            BigDecimal monthBalance = BigDecimal.ZERO;
+    /**
+     * Returns the balance of every month from January of the first year to
+     * December of the last year, keyed "yyyy-MM", in a single pass over the
+     * month buckets of the date index.
+     */
+    public Map<String, BigDecimal> getMonthlyBalances(int fromYear, int toYear) {
+        ensureLoaded(fromYear, toYear);
+        int monthCount = Math.max(0, (toYear - fromYear + 1) * 12);
+        long[] balances = new long[monthCount];
 
-            for (Payment payment : monthlyPayments) {
-                if ("Debit".equals(payment.getDebitCredit())) {
-                    monthBalance = monthBalance.subtract(payment.getAmountCHF());
-                } else if ("Credit".equals(payment.getDebitCredit())) {
-                    monthBalance = monthBalance.add(payment.getAmountCHF());
-                }
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < monthCount; i++) {
+                int index = i;
+                dateIndex.forEachInMonth(fromYear + i / 12, i % 12 + 1,
+                        id -> balances[index] += payments.getSignedAmountCHFMinor(id));
             }
+        } finally {
+            lock.readLock().unlock();
+        }
 
-            String monthName = String.format("%04d-%02d", year, month);
-            monthlyBalances.put(monthName, monthBalance);
+        Map<String, BigDecimal> monthlyBalances = new LinkedHashMap<>();
+        for (int i = 0; i < monthCount; i++) {
+            String monthName = String.format("%04d-%02d", fromYear + i / 12, i % 12 + 1);
+            monthlyBalances.put(monthName, Money.toBigDecimal(balances[i]));
         }
 
         return monthlyBalances;
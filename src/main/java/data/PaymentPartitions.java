@@ -0,0 +1,129 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+import models.Payment;
+import models.Recurrence;
+import utils.IntIntHashMap;
+
+/**
+ * Bookkeeping for partitioned payment storage.
+ *
+ * One-time payments are stored in one file per year. Recurring payments are
+ * kept together in their own partition, because the timeline needs them for
+ * any date range; that partition is always loaded. Tracks which partition
+ * every loaded payment belongs to, which partitions are still on disk only
+ * and which ones have to be written.
+ */
+class PaymentPartitions {
+    static final int RECURRING = 0;
+    private static final String RECURRING_NAME = "recurring";
+
+    private final IntIntHashMap partitionById = new IntIntHashMap(-1);
+    private final NavigableSet<Integer> cold = new TreeSet<>();
+    private final NavigableSet<Integer> dirty = new TreeSet<>();
+
+    static int partitionOf(Payment payment) {
+        Recurrence recurrence = payment.getRecurrenceType();
+        if (recurrence != null && recurrence != Recurrence.ONE_TIME) {
+            return RECURRING;
+        }
+        return payment.getPaymentDate().getYear();
+    }
+
+    static String name(int partition) {
+        return partition == RECURRING ? RECURRING_NAME : String.valueOf(partition);
+    }
+
+    /**
+     * Returns the partition of a file name, or null if the file is not a
+     * partition.
+     */
+    static Integer parse(String name) {
+        if (RECURRING_NAME.equals(name)) {
+            return RECURRING;
+        }
+        try {
+            return Integer.valueOf(name);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public void track(Payment payment) {
+        partitionById.put(payment.getId(), partitionOf(payment));
+    }
+
+    /**
+     * Records the partition of a changed payment and marks the partition it
+     * came from and the one it is in now as dirty.
+     */
+    public void update(Payment payment) {
+        int partition = partitionOf(payment);
+        int previous = partitionById.put(payment.getId(), partition);
+        if (previous != -1) {
+            dirty.add(previous);
+        }
+        dirty.add(partition);
+    }
+
+    public void remove(int id) {
+        int previous = partitionById.remove(id);
+        if (previous != -1) {
+            dirty.add(previous);
+        }
+    }
+
+    public int get(int id) {
+        return partitionById.get(id);
+    }
+
+    public void markCold(int partition) {
+        cold.add(partition);
+    }
+
+    public void markLoaded(int partition) {
+        cold.remove(partition);
+    }
+
+    public boolean isCold(int partition) {
+        return cold.contains(partition);
+    }
+
+    /**
+     * Returns the year partitions between the two years (inclusive) that are
+     * not loaded yet.
+     */
+    public List<Integer> getColdYears(int fromYear, int toYear) {
+        if (fromYear > toYear) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(cold.subSet(fromYear, true, toYear, true));
+    }
+
+    public List<Integer> getColdPartitions() {
+        return new ArrayList<>(cold);
+    }
+
+    public void markDirty(int partition) {
+        dirty.add(partition);
+    }
+
+    /**
+     * Returns the dirty partitions and marks them clean.
+     */
+    public List<Integer> takeDirty() {
+        List<Integer> result = new ArrayList<>(dirty);
+        dirty.clear();
+        return result;
+    }
+
+    public void clear() {
+        partitionById.clear();
+        cold.clear();
+        dirty.clear();
+    }
+}
@@ -0,0 +1,39 @@
+package data;
+
+import java.util.Collections;
+import java.util.List;
+
+import models.Payment;
+
+/**
+ * All payments at one version of the data, newest first.
+ *
+ * PaymentManager hands out the same snapshot until the next change, so
+ * repeated reads allocate nothing and a panel that takes one snapshot sees
+ * the same data in every view it builds from it. The list cannot be
+ * modified; its payments are only changed through PaymentManager.
+ */
+public final class PaymentSnapshot {
+    private final long version;
+    private final List<Payment> payments;
+
+    PaymentSnapshot(long version, List<Payment> payments) {
+        this.version = version;
+        this.payments = Collections.unmodifiableList(payments);
+    }
+
+    /**
+     * Increases with every change; equal versions mean equal data.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public List<Payment> getPayments() {
+        return payments;
+    }
+
+    public int size() {
+        return payments.size();
+    }
+}
@@ -0,0 +1,55 @@
+package data;
+
+import java.util.function.Consumer;
+
+import models.DebitCredit;
+import models.Payment;
+
+/**
+ * In-memory storage of the loaded payments, keyed by payment id.
+ *
+ * Ordering is left to {@link PaymentDateIndex}; stores only answer lookups by
+ * id. The column getters let aggregations read single values without
+ * materializing a whole Payment.
+ */
+interface PaymentStore {
+    boolean contains(int id);
+
+    /**
+     * Returns the payment with the given id, or null. Stores that do not keep
+     * Payment objects return a fresh copy on every call.
+     */
+    Payment get(int id);
+
+    /**
+     * Inserts the payment, or replaces the stored payment with the same id.
+     */
+    void put(Payment payment);
+
+    void remove(int id);
+
+    int size();
+
+    void clear();
+
+    void forEach(Consumer<Payment> action);
+
+    long getAmountCHFMinor(int id);
+
+    /**
+     * Returns the amount in Rappen as it affects the balance: credits are
+     * positive, debits negative and anything else zero.
+     */
+    long getSignedAmountCHFMinor(int id);
+
+    int getTypeId(int id);
+
+    static long signedAmount(DebitCredit debitCredit, long amountMinor) {
+        if (debitCredit == DebitCredit.DEBIT) {
+            return -amountMinor;
+        } else if (debitCredit == DebitCredit.CREDIT) {
+            return amountMinor;
+        }
+        return 0;
+    }
+}
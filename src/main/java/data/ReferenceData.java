@@ -0,0 +1,86 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import models.PaymentLocation;
+import models.PaymentType;
+
+/**
+ * The locations and types, loaded once and shared by LocationManager,
+ * TypeManager and PaymentManager.
+ *
+ * LocationManager and TypeManager change the registries and save them;
+ * PaymentManager only looks up names.
+ */
+class ReferenceData {
+    private static ReferenceData instance;
+
+    final ReferenceRegistry<PaymentLocation> locations =
+            new ReferenceRegistry<>(PaymentLocation::getId, PaymentLocation::getName);
+    final ReferenceRegistry<PaymentType> types =
+            new ReferenceRegistry<>(PaymentType::getId, PaymentType::getName);
+
+    private ReferenceData() {
+        loadLocations();
+        loadTypes();
+    }
+
+    static synchronized ReferenceData getInstance() {
+        if (instance == null) {
+            instance = new ReferenceData();
+        }
+        return instance;
+    }
+
+    void loadLocations() {
+        List<PaymentLocation> loaded = new ArrayList<>();
+        try {
+            List<String[]> locationData = FileStorage.loadLocations();
+            for (int i = 1; i < locationData.size(); i++) {
+                String[] row = locationData.get(i);
+                if (row.length >= 4) {
+                    PaymentLocation location = new PaymentLocation();
+                    location.setId(Integer.parseInt(row[0]));
+                    location.setName(row[1]);
+                    location.setDescription(row[2]);
+                    location.setAddress(row[3]);
+                    loaded.add(location);
+                    FileStorage.advanceLocationIds(location.getId());
+                }
+            }
+
+            // Sort by name
+            loaded.sort((l1, l2) -> l1.getName().compareToIgnoreCase(l2.getName()));
+
+        } catch (Exception e) {
+            System.err.println("Error loading location data: " + e.getMessage());
+        }
+        locations.replaceAll(loaded);
+    }
+
+    void loadTypes() {
+        List<PaymentType> loaded = new ArrayList<>();
+        try {
+            List<String[]> typeData = FileStorage.loadTypes();
+            for (int i = 1; i < typeData.size(); i++) {
+                String[] row = typeData.get(i);
+                if (row.length >= 3) {
+                    PaymentType type = new PaymentType();
+                    type.setId(Integer.parseInt(row[0]));
+                    type.setName(row[1]);
+                    type.setDescription(row[2]);
+                    loaded.add(type);
+                    FileStorage.advanceTypeIds(type.getId());
+                }
+            }
+
+            // Sort by name
+            loaded.sort((t1, t2) -> t1.getName().compareToIgnoreCase(t2.getName()));
+
+        } catch (Exception e) {
+            System.err.println("Error loading type data: " + e.getMessage());
+        }
+        types.replaceAll(loaded);
+    }
+}
@@ -0,0 +1,140 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Locations or types, indexed by id and by name ignoring case.
+ *
+ * The registry only holds the entries; reading and writing their file is
+ * left to the managers. Its lock is never held while calling out, so it can
+ * be used under any manager's lock.
+ */
+class ReferenceRegistry<T> {
+    private final ToIntFunction<T> idOf;
+    private final Function<T, String> nameOf;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // In file order
+    private final List<T> entries = new ArrayList<>();
+    private final Map<Integer, T> byId = new HashMap<>();
+    private final Map<String, T> byName = new HashMap<>();
+
+    ReferenceRegistry(ToIntFunction<T> idOf, Function<T, String> nameOf) {
+        this.idOf = idOf;
+        this.nameOf = nameOf;
+    }
+
+    void replaceAll(List<T> newEntries) {
+        lock.writeLock().lock();
+        try {
+            entries.clear();
+            byId.clear();
+            byName.clear();
+            for (T entry : newEntries) {
+                index(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void add(T entry) {
+        lock.writeLock().lock();
+        try {
+            index(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the entry with the given id and returns it, or null.
+     */
+    T remove(int id) {
+        lock.writeLock().lock();
+        try {
+            T entry = byId.remove(id);
+            if (entry != null) {
+                entries.remove(entry);
+                String key = nameKey(nameOf.apply(entry));
+                if (byName.remove(key, entry)) {
+                    // Another entry may carry the same name
+                    for (T other : entries) {
+                        if (nameKey(nameOf.apply(other)).equals(key)) {
+                            byName.put(key, other);
+                            break;
+                        }
+                    }
+                }
+            }
+            return entry;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    T get(int id) {
+        lock.readLock().lock();
+        try {
+            return byId.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    T getByName(String name) {
+        if (name == null) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            return byName.get(nameKey(name));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    String getName(int id, String defaultName) {
+        T entry = get(id);
+        return entry != null ? nameOf.apply(entry) : defaultName;
+    }
+
+    List<T> getAll() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(entries);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    Map<Integer, String> getNames() {
+        lock.readLock().lock();
+        try {
+            Map<Integer, String> names = new HashMap<>();
+            for (T entry : entries) {
+                names.put(idOf.applyAsInt(entry), nameOf.apply(entry));
+            }
+            return names;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void index(T entry) {
+        entries.add(entry);
+        byId.put(idOf.applyAsInt(entry), entry);
+        // The first entry keeps the name, as a linear search would find it
+        byName.putIfAbsent(nameKey(nameOf.apply(entry)), entry);
+    }
+
+    private static String nameKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
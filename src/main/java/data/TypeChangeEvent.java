@@ -0,0 +1,24 @@
+package data;
+
+import models.PaymentType;
+
+/**
+ * A payment type was added, updated or deleted through TypeManager.
+ */
+public final class TypeChangeEvent {
+    private final ChangeKind kind;
+    private final PaymentType type;
+
+    TypeChangeEvent(ChangeKind kind, PaymentType type) {
+        this.kind = kind;
+        this.type = type;
+    }
+
+    public ChangeKind getKind() {
+        return kind;
+    }
+
+    public PaymentType getType() {
+        return type;
+    }
+}
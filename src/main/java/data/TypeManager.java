@@ -2,17 +2,19 @@ package data;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
-import models.Payment;
 import models.PaymentType;
 
 public class TypeManager {
     private static TypeManager instance;
-    private List<PaymentType> types;
+    // Shared with PaymentManager, indexed by id and name
+    private final ReferenceRegistry<PaymentType> types;
+    // Serializes changes, so ids, the registry and the file stay in step
+    private final ReentrantLock lock = new ReentrantLock();
 
     private TypeManager() {
-        types = new ArrayList<>();
-        loadTypes();
+        types = ReferenceData.getInstance().types;
     }
 
     public static synchronized TypeManager getInstance() {
@@ -22,31 +24,6 @@ public class TypeManager {
         return instance;
     }
 
-    private void loadTypes() {
-        try {
-            List<String[]> typeData = FileStorage.loadTypes();
-            if (typeData.size() <= 1)
-                return; // Only header or empty
-
-            for (int i = 1; i < typeData.size(); i++) {
-                String[] row = typeData.get(i);
-                if (row.length >= 3) {
-                    PaymentType type = new PaymentType();
-                    type.setId(Integer.parseInt(row[0]));
-                    type.setName(row[1]);
-                    type.setDescription(row[2]);
-                    types.add(type);
-                }
-            }
-
-            // Sort by name
-            types.sort((t1, t2) -> t1.getName().compareToIgnoreCase(t2.getName()));
-
-        } catch (Exception e) {
-            System.err.println("Error loading type data: " + e.getMessage());
-        }
-    }
-
     private void saveTypes() {
         try {
             List<String[]> data = new ArrayList<>();
@@ -54,7 +31,7 @@ public class TypeManager {
             data.add(new String[] { "id", "name", "description" });
 
             // Add type data
-            for (PaymentType type : types) {
+            for (PaymentType type : types.getAll()) {
                 data.add(new String[] {
                         String.valueOf(type.getId()),
                         type.getName(),
@@ -71,59 +48,56 @@ public class TypeManager {
 
     // CRUD Operations
     public int addType(PaymentType type) {
-        type.setId(FileStorage.getNextTypeId());
-        types.add(type);
-        saveTypes();
-        PaymentManager.getInstance().refreshData(); // Refresh payment manager cache
+        lock.lock();
+        try {
+            type.setId(FileStorage.getNextTypeId());
+            types.add(type);
+            saveTypes();
+        } finally {
+            lock.unlock();
+        }
+        ChangeBus.getInstance().publish(new TypeChangeEvent(ChangeKind.ADDED, type));
         return type.getId();
     }
 
     public List<PaymentType> getAllTypes() {
-        return new ArrayList<>(types);
+        return types.getAll();
     }
 
     public PaymentType getTypeById(int id) {
-        for (PaymentType type : types) {
-            if (type.getId() == id) {
-                return type;
-            }
-        }
-        return null;
+        return types.get(id);
     }
 
     public PaymentType getTypeByName(String name) {
-        for (PaymentType type : types) {
-            if (type.getName().equalsIgnoreCase(name)) {
-                return type;
-            }
-        }
-        return null;
+        return types.getByName(name);
     }
 
     public boolean deleteType(int id) {
-        // Check if any payment uses this type
         PaymentManager paymentManager = PaymentManager.getInstance();
-        List<Payment> payments = paymentManager.getAllPayments();
-        for (Payment payment : payments) {
-            if (payment.getTypeId() == id) {
-                return false; // Cannot delete, type is in use
-            }
-        }
-
-        // Remove type
-        for (int i = 0; i < types.size(); i++) {
-            if (types.get(i).getId() == id) {
-                types.remove(i);
-                saveTypes();
-                paymentManager.refreshData(); // Refresh payment manager cache
-                return true;
+        PaymentType removed;
+        lock.lock();
+        try {
+            // Checked and removed under the payment manager's write lock, so
+            // no payment can start using the type in between
+            removed = paymentManager.removeTypeIfUnused(id, () -> types.remove(id));
+            if (removed == null) {
+                return false; // In use or unknown
             }
+            saveTypes();
+        } finally {
+            lock.unlock();
         }
-        return false;
+        ChangeBus.getInstance().publish(new TypeChangeEvent(ChangeKind.DELETED, removed));
+        return true;
     }
 
     public void refreshData() {
-        types.clear();
-        loadTypes();
+        lock.lock();
+        try {
+            ReferenceData.getInstance().loadTypes();
+        } finally {
+            lock.unlock();
+        }
+        ChangeBus.getInstance().publish(new DataReloadedEvent(TypeManager.class));
     }
 }
\ No newline at end of file
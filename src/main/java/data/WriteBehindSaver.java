@@ -0,0 +1,87 @@
+package data;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Saves payment changes on a background thread.
+ *
+ * Mutations only mark the data dirty. The first mark schedules a save after
+ * the configured delay and every further mark before it runs is folded into
+ * the same write. The save action runs on the persistence thread, so it has
+ * to be safe against concurrent mutations.
+ */
+class WriteBehindSaver {
+    private static final long DEFAULT_DELAY_MILLIS = 500;
+
+    interface SaveAction {
+        void save() throws IOException;
+    }
+
+    private final SaveAction action;
+    private final long delayMillis;
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    WriteBehindSaver(SaveAction action) {
+        this.action = action;
+        this.delayMillis = parseDelay(
+                FileStorage.getConfigValue("persistence.writebehind.delay", String.valueOf(DEFAULT_DELAY_MILLIS)));
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "payment-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static long parseDelay(String value) {
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return DEFAULT_DELAY_MILLIS;
+        }
+    }
+
+    public void markDirty() {
+        dirty.set(true);
+        if (scheduled.compareAndSet(false, true)) {
+            executor.schedule(this::scheduledSave, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void scheduledSave() {
+        // Cleared first, so a mutation during the write schedules a new save
+        scheduled.set(false);
+        saveIfDirty();
+    }
+
+    private void saveIfDirty() {
+        if (!dirty.getAndSet(false)) {
+            return;
+        }
+        try {
+            action.save();
+        } catch (Exception e) {
+            dirty.set(true);
+            System.err.println("Error saving payment data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes pending changes and waits until they are on disk.
+     */
+    public void flush() {
+        try {
+            executor.submit(this::saveIfDirty).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Error saving payment data: " + e.getMessage());
+        }
+    }
+}
@@ -2,16 +2,23 @@ package gui;
 
 import java.awt.BorderLayout;
 import java.awt.CardLayout;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.ImageIcon;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.ProgressMonitor;
 import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
 public class MainFrame extends JFrame {
     private CardLayout cardLayout;
@@ -19,10 +26,15 @@ public class MainFrame extends JFrame {
     private PaymentEntryPanel entryPanel;
     private PaymentListPanel listPanel;
     private TimelinePanel timelinePanel; // Add this
+    private JMenuItem backupMenuItem;
 
     public MainFrame() {
         setTitle("Payment Tracker - Flat File Edition");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        // Write payment changes still pending in write-behind mode and the
+        // startup snapshot on exit
+        Runtime.getRuntime().addShutdownHook(new Thread(
+                () -> data.PaymentManager.getInstance().close(), "payment-close"));
         setSize(1300, 800); // Increased size for timeline view
         setLocationRelativeTo(null);
 
@@ -53,6 +65,9 @@ public class MainFrame extends JFrame {
 
         // Show entry panel by default
         cardLayout.show(mainPanel, "entry");
+
+        // Periodic backups, if configured
+        data.BackupScheduler.getInstance().startAutoBackup();
     }
 
     private void createMenuBar() {
@@ -60,13 +75,17 @@ public class MainFrame extends JFrame {
 
         // File menu
         JMenu fileMenu = new JMenu("File");
-        JMenuItem backupMenuItem = new JMenuItem("Create Backup");
+        backupMenuItem = new JMenuItem("Create Backup");
         backupMenuItem.addActionListener(e -> createBackup());
 
+        JMenuItem restoreMenuItem = new JMenuItem("Restore Backup...");
+        restoreMenuItem.addActionListener(e -> restoreBackup());
+
         JMenuItem exitMenuItem = new JMenuItem("Exit");
         exitMenuItem.addActionListener(e -> System.exit(0));
 
         fileMenu.add(backupMenuItem);
+        fileMenu.add(restoreMenuItem);
         fileMenu.addSeparator();
         fileMenu.add(exitMenuItem);
 
@@ -106,17 +125,81 @@ public class MainFrame extends JFrame {
         setJMenuBar(menuBar);
     }
 
+    // Runs the backup on the backup thread; progress and the result are
+    // shown on the EDT
     private void createBackup() {
+        backupMenuItem.setEnabled(false);
+        ProgressMonitor monitor = new ProgressMonitor(this, "Creating backup...", null, 0, 1);
+        monitor.setMillisToDecideToPopup(200);
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        data.BackupScheduler.getInstance().submit(new data.FileStorage.BackupProgress() {
+            @Override
+            public void update(int done, int total) {
+                SwingUtilities.invokeLater(() -> {
+                    monitor.setMaximum(total);
+                    monitor.setProgress(done);
+                    if (monitor.isCanceled()) {
+                        cancelled.set(true);
+                    }
+                });
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return cancelled.get();
+            }
+        }).whenComplete((backup, error) -> SwingUtilities.invokeLater(() -> {
+            monitor.close();
+            backupMenuItem.setEnabled(true);
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause == null) {
+                JOptionPane.showMessageDialog(this,
+                        "Backup created successfully in data/backup folder!",
+                        "Backup Complete",
+                        JOptionPane.INFORMATION_MESSAGE);
+            } else if (!(cause instanceof CancellationException)) {
+                if (cause instanceof UncheckedIOException) {
+                    cause = cause.getCause();
+                }
+                JOptionPane.showMessageDialog(this,
+                        "Error creating backup: " + cause.getMessage(),
+                        "Backup Error",
+                        JOptionPane.ERROR_MESSAGE);
+            }
+        }));
+    }
+
+    private void restoreBackup() {
+        JFileChooser chooser = new JFileChooser("data");
+        chooser.setDialogTitle("Select Backup Folder or Archive");
+        chooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        chooser.setFileFilter(new FileNameExtensionFilter("Backup archives (*.zip)", "zip"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        int confirm = JOptionPane.showConfirmDialog(this,
+                "Replace all current data with the backup " + chooser.getSelectedFile().getName() + "?",
+                "Restore Backup",
+                JOptionPane.YES_NO_OPTION,
+                JOptionPane.WARNING_MESSAGE);
+        if (confirm != JOptionPane.YES_OPTION) {
+            return;
+        }
+
         try {
-            data.FileStorage.createBackup();
+            data.PaymentManager.getInstance().restoreBackup(chooser.getSelectedFile().toPath());
+            data.LocationManager.getInstance().refreshData();
+            data.TypeManager.getInstance().refreshData();
             JOptionPane.showMessageDialog(this,
-                    "Backup created successfully in data/backup folder!",
-                    "Backup Complete",
+                    "Backup restored successfully!",
+                    "Restore Complete",
                     JOptionPane.INFORMATION_MESSAGE);
         } catch (Exception e) {
             JOptionPane.showMessageDialog(this,
-                    "Error creating backup: " + e.getMessage(),
-                    "Backup Error",
+                    "Error restoring backup: " + e.getMessage(),
+                    "Restore Error",
                     JOptionPane.ERROR_MESSAGE);
         }
     }
@@ -11,6 +11,8 @@ import java.math.BigDecimal;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
@@ -22,11 +24,18 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
 import javax.swing.SwingUtilities;
+import javax.swing.event.PopupMenuEvent;
+import javax.swing.event.PopupMenuListener;
 
+import data.ChangeBus;
+import data.DataReloadedEvent;
+import data.LocationChangeEvent;
 import data.LocationManager;
 import data.PaymentManager;
+import data.TypeChangeEvent;
 import data.TypeManager;
 import gui.components.SimpleDatePicker;
+import gui.components.UsageCountRenderer;
 import models.Payment;
 import models.PaymentLocation;
 import models.PaymentType;
@@ -49,6 +58,11 @@ public class PaymentEntryPanel extends JPanel {
     private JComboBox<String> debitCreditCombo;
     private JComboBox<String> locationCombo;
     private JComboBox<String> typeCombo;
+    private UsageCountRenderer locationUsageRenderer;
+    private UsageCountRenderer typeUsageRenderer;
+    // Ids of the combo entries after the placeholder, in combo order
+    private final List<Integer> locationIds = new ArrayList<>();
+    private final List<Integer> typeIds = new ArrayList<>();
 
     // Number formatters for Swiss locale
     private DecimalFormat amountFormatter;
@@ -83,6 +97,20 @@ public class PaymentEntryPanel extends JPanel {
         refreshLocationCombo();
         refreshTypeCombo();
 
+        // Keep the choices current when locations or types change elsewhere
+        ChangeBus changeBus = ChangeBus.getInstance();
+        changeBus.subscribe(LocationChangeEvent.class,
+                e -> SwingUtilities.invokeLater(this::refreshLocationCombo));
+        changeBus.subscribe(TypeChangeEvent.class,
+                e -> SwingUtilities.invokeLater(this::refreshTypeCombo));
+        changeBus.subscribe(DataReloadedEvent.class, e -> {
+            if (e.getSource() == LocationManager.class) {
+                SwingUtilities.invokeLater(this::refreshLocationCombo);
+            } else if (e.getSource() == TypeManager.class) {
+                SwingUtilities.invokeLater(this::refreshTypeCombo);
+            }
+        });
+
         // Set currency change listener
         currencyCombo.addActionListener(e -> updateCurrencyFields());
 
@@ -202,6 +230,11 @@ public class PaymentEntryPanel extends JPanel {
 
         JPanel locationPanel = new JPanel(new BorderLayout(5, 0));
         locationCombo = new JComboBox<>();
+        locationUsageRenderer = new UsageCountRenderer(index -> idAt(locationIds, index));
+        locationCombo.setRenderer(locationUsageRenderer);
+        // Counts are read when the list opens, so they are always current
+        locationCombo.addPopupMenuListener(onPopupOpen(
+                () -> locationUsageRenderer.setCounts(paymentManager.getLocationUsageCounts())));
         locationPanel.add(locationCombo, BorderLayout.CENTER);
 
         JButton addLocationBtn = new JButton("+");
@@ -221,6 +254,10 @@ public class PaymentEntryPanel extends JPanel {
 
         JPanel typePanel = new JPanel(new BorderLayout(5, 0));
         typeCombo = new JComboBox<>();
+        typeUsageRenderer = new UsageCountRenderer(index -> idAt(typeIds, index));
+        typeCombo.setRenderer(typeUsageRenderer);
+        typeCombo.addPopupMenuListener(onPopupOpen(
+                () -> typeUsageRenderer.setCounts(paymentManager.getTypeUsageCounts())));
         typePanel.add(typeCombo, BorderLayout.CENTER);
 
         JButton addTypeBtn = new JButton("+");
@@ -329,24 +366,68 @@ public class PaymentEntryPanel extends JPanel {
         }
     }
 
+    /**
+     * Reloads the location and type choices, e.g. after a backup was restored.
+     */
+    public void refreshData() {
+        refreshLocationCombo();
+        refreshTypeCombo();
+    }
+
+    private static PopupMenuListener onPopupOpen(Runnable action) {
+        return new PopupMenuListener() {
+            @Override
+            public void popupMenuWillBecomeVisible(PopupMenuEvent e) {
+                action.run();
+            }
+
+            @Override
+            public void popupMenuWillBecomeInvisible(PopupMenuEvent e) {
+            }
+
+            @Override
+            public void popupMenuCanceled(PopupMenuEvent e) {
+            }
+        };
+    }
+
+    // Index 0 is the placeholder entry without an id
+    private static int idAt(List<Integer> ids, int index) {
+        return index > 0 && index <= ids.size() ? ids.get(index - 1) : -1;
+    }
+
     private void refreshLocationCombo() {
+        // Keep the current choice if it still exists
+        Object selected = locationCombo.getSelectedIndex() > 0 ? locationCombo.getSelectedItem() : null;
         locationCombo.removeAllItems();
         locationCombo.addItem("-- Ort auswählen --");
+        locationIds.clear();
         for (PaymentLocation location : locationManager.getAllLocations()) {
+            locationIds.add(location.getId());
             locationCombo.addItem(location.getName());
         }
-        if (locationCombo.getItemCount() > 1) {
+        if (selected != null) {
+            locationCombo.setSelectedItem(selected);
+        }
+        if (locationCombo.getSelectedIndex() <= 0 && locationCombo.getItemCount() > 1) {
             locationCombo.setSelectedIndex(1);
         }
     }
 
     private void refreshTypeCombo() {
+        // Keep the current choice if it still exists
+        Object selected = typeCombo.getSelectedIndex() > 0 ? typeCombo.getSelectedItem() : null;
         typeCombo.removeAllItems();
         typeCombo.addItem("-- Kategorie auswählen --");
+        typeIds.clear();
         for (PaymentType type : typeManager.getAllTypes()) {
+            typeIds.add(type.getId());
             typeCombo.addItem(type.getName());
         }
-        if (typeCombo.getItemCount() > 1) {
+        if (selected != null) {
+            typeCombo.setSelectedItem(selected);
+        }
+        if (typeCombo.getSelectedIndex() <= 0 && typeCombo.getItemCount() > 1) {
             typeCombo.setSelectedIndex(1);
         }
     }
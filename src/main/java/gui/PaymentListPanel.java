@@ -26,7 +26,12 @@ import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableColumnModel;
 
+import data.ChangeBus;
+import data.DataReloadedEvent;
+import data.LocationChangeEvent;
+import data.PaymentChangeEvent;
 import data.PaymentManager;
+import data.TypeChangeEvent;
 import models.Payment;
 
 public class PaymentListPanel extends JPanel {
@@ -55,8 +60,23 @@ public class PaymentListPanel extends JPanel {
         createButtonPanel();
         createFilterPanel();
 
-        // Load data
-        refreshData();
+        // Data is loaded when the panel is shown, so older payment
+        // partitions are not read at startup
+
+        // Changes made anywhere show up while the list is visible
+        ChangeBus changeBus = ChangeBus.getInstance();
+        changeBus.subscribe(PaymentChangeEvent.class, e -> refreshIfShowing());
+        changeBus.subscribe(LocationChangeEvent.class, e -> refreshIfShowing());
+        changeBus.subscribe(TypeChangeEvent.class, e -> refreshIfShowing());
+        changeBus.subscribe(DataReloadedEvent.class, e -> refreshIfShowing());
+    }
+
+    private void refreshIfShowing() {
+        SwingUtilities.invokeLater(() -> {
+            if (isShowing()) {
+                refreshData();
+            }
+        });
     }
 
     private void createTable() {
@@ -248,6 +268,7 @@ public class PaymentListPanel extends JPanel {
         LocalDate now = LocalDate.now();
 
         switch (filter) {
+            // Date filters only load the partitions they cover
             case "This Month":
                 filteredPayments = paymentManager.getPaymentsByMonth(now.getYear(), now.getMonthValue());
                 break;
@@ -263,20 +284,21 @@ public class PaymentListPanel extends JPanel {
                         LocalDate.of(now.getYear(), 12, 31));
                 break;
 
+            // The other views need all payments and share the snapshot
             case "Debits Only":
-                filteredPayments = paymentManager.getAllPayments().stream()
-                        .filter(p -> "Debit".equals(p.getDebitCredit()))
+                filteredPayments = paymentManager.getSnapshot().getPayments().stream()
+                        .filter(Payment::isDebit)
                         .collect(Collectors.toList());
                 break;
 
             case "Credits Only":
-                filteredPayments = paymentManager.getAllPayments().stream()
-                        .filter(p -> "Credit".equals(p.getDebitCredit()))
+                filteredPayments = paymentManager.getSnapshot().getPayments().stream()
+                        .filter(Payment::isCredit)
                         .collect(Collectors.toList());
                 break;
 
             default: // "All Payments"
-                filteredPayments = paymentManager.getAllPayments();
+                filteredPayments = paymentManager.getSnapshot().getPayments();
         }
 
         displayFilteredPayments(filteredPayments);
@@ -390,7 +412,6 @@ public class PaymentListPanel extends JPanel {
 
             if (confirm == JOptionPane.YES_OPTION) {
                 if (paymentManager.deletePayment(paymentId)) {
-                    refreshData();
                     JOptionPane.showMessageDialog(this,
                             "Payment deleted successfully!",
                             "Success",
@@ -432,7 +453,6 @@ public class PaymentListPanel extends JPanel {
                         original.getTypeId());
 
                 int newId = paymentManager.addPayment(copy);
-                refreshData();
 
                 JOptionPane.showMessageDialog(this,
                         String.format("Payment duplicated! New ID: %d", newId),
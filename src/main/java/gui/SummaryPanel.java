@@ -32,19 +32,8 @@ public class SummaryPanel extends JPanel {
         LocalDate now = LocalDate.now();
         YearMonth currentMonth = YearMonth.from(now);
 
-        BigDecimal currentMonthDebits = paymentManager.getAllPayments().stream()
-                .filter(p -> p.getPaymentDate().getMonth() == now.getMonth() &&
-                        p.getPaymentDate().getYear() == now.getYear() &&
-                        "Debit".equals(p.getDebitCredit()))
-                .map(p -> p.getAmountCHF())
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        BigDecimal currentMonthCredits = paymentManager.getAllPayments().stream()
-                .filter(p -> p.getPaymentDate().getMonth() == now.getMonth() &&
-                        p.getPaymentDate().getYear() == now.getYear() &&
-                        "Credit".equals(p.getDebitCredit()))
-                .map(p -> p.getAmountCHF())
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        BigDecimal currentMonthDebits = paymentManager.getTotalAmountByMonth(now.getYear(), now.getMonthValue());
+        BigDecimal currentMonthCredits = paymentManager.getTotalCreditsByMonth(now.getYear(), now.getMonthValue());
 
         BigDecimal currentMonthNet = currentMonthCredits.subtract(currentMonthDebits);
 
@@ -57,17 +46,13 @@ public class SummaryPanel extends JPanel {
         summaryPanel.add(new JLabel(String.format("CHF %,.2f", totalBalance.doubleValue())));
 
         // Number of payments
-        int totalPayments = paymentManager.getAllPayments().size();
+        int totalPayments = paymentManager.getPaymentCount();
         summaryPanel.add(new JLabel("Total Payments:"));
         summaryPanel.add(new JLabel(String.valueOf(totalPayments)));
 
         // Monthly averages
-        if (!paymentManager.getAllPayments().isEmpty()) {
-            LocalDate firstPayment = paymentManager.getAllPayments().stream()
-                    .map(p -> p.getPaymentDate())
-                    .min(LocalDate::compareTo)
-                    .orElse(now);
-
+        LocalDate firstPayment = paymentManager.getFirstPaymentDate();
+        if (firstPayment != null) {
             long monthsBetween = currentMonth.getYear() * 12 + currentMonth.getMonthValue() -
                     (firstPayment.getYear() * 12 + firstPayment.getMonthValue()) + 1;
 
@@ -27,6 +27,7 @@ import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableColumnModel;
@@ -34,8 +35,15 @@ import javax.swing.table.TableColumnModel;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 
+import data.ChangeBus;
+import data.DataReloadedEvent;
+import data.LocationChangeEvent;
+import data.PaymentChangeEvent;
 import data.PaymentManager;
+import data.TypeChangeEvent;
+import models.Money;
 import models.Payment;
+import models.Recurrence;
 
 public class TimelinePanel2 extends JPanel {
     private MainFrame mainFrame;
@@ -64,6 +72,21 @@ public class TimelinePanel2 extends JPanel {
 
         // Load data with default date range (current month)
         loadDataWithDefaultRange();
+
+        // Changes made anywhere show up while the timeline is visible
+        ChangeBus changeBus = ChangeBus.getInstance();
+        changeBus.subscribe(PaymentChangeEvent.class, e -> refreshIfShowing());
+        changeBus.subscribe(LocationChangeEvent.class, e -> refreshIfShowing());
+        changeBus.subscribe(TypeChangeEvent.class, e -> refreshIfShowing());
+        changeBus.subscribe(DataReloadedEvent.class, e -> refreshIfShowing());
+    }
+
+    private void refreshIfShowing() {
+        SwingUtilities.invokeLater(() -> {
+            if (isShowing()) {
+                refreshData();
+            }
+        });
     }
 
     private void createFilterPanel() {
@@ -240,7 +263,7 @@ public class TimelinePanel2 extends JPanel {
                 return;
             }
 
-            List<Payment> allPayments = paymentManager.getAllPayments();
+            List<Payment> allPayments = paymentManager.getTimelinePayments(startDate, endDate);
             List<TimelineEntry> timelineEntries = generateTimelineEntries(
                     allPayments, startDate, endDate);
 
@@ -258,7 +281,7 @@ public class TimelinePanel2 extends JPanel {
     private List<TimelineEntry> generateTimelineEntries(List<Payment> payments,
             LocalDate startDate, LocalDate endDate) {
         List<TimelineEntry> entries = new ArrayList<>();
-        BigDecimal runningBalance = BigDecimal.ZERO;
+        long runningBalance = 0; // Rappen
 
         // First, add all one-time payments within date range
         for (Payment payment : payments) {
@@ -267,7 +290,7 @@ public class TimelinePanel2 extends JPanel {
                 continue;
             }
 
-            if ("One-time".equals(payment.getRecurrence())) {
+            if (payment.getRecurrenceType() == Recurrence.ONE_TIME) {
                 runningBalance = updateBalance(runningBalance, payment);
                 entries.add(new TimelineEntry(payment, runningBalance));
             }
@@ -275,7 +298,7 @@ public class TimelinePanel2 extends JPanel {
 
         // Then add recurring payments
         for (Payment payment : payments) {
-            if ("One-time".equals(payment.getRecurrence())) {
+            if (payment.getRecurrenceType() == Recurrence.ONE_TIME) {
                 continue; // Already processed
             }
 
@@ -300,7 +323,7 @@ public class TimelinePanel2 extends JPanel {
             LocalDate startDate, LocalDate endDate) {
         List<LocalDate> occurrences = new ArrayList<>();
         LocalDate paymentDate = payment.getPaymentDate();
-        String recurrence = payment.getRecurrence();
+        Recurrence recurrence = payment.getRecurrenceType();
 
         if (paymentDate.isAfter(endDate)) {
             return occurrences;
@@ -320,31 +343,35 @@ public class TimelinePanel2 extends JPanel {
         return occurrences;
     }
 
-    private LocalDate calculateNextOccurrence(LocalDate currentDate, String recurrence) {
+    private LocalDate calculateNextOccurrence(LocalDate currentDate, Recurrence recurrence) {
+        if (recurrence == null) {
+            // Unknown stored value, same as the default below
+            return currentDate.plusMonths(1);
+        }
         switch (recurrence) {
-            case "Daily":
+            case DAILY:
                 return currentDate.plusDays(1);
 
-            case "Weekly":
+            case WEEKLY:
                 return currentDate.plusWeeks(1);
 
-            case "Every 2 weeks":
+            case EVERY_2_WEEKS:
                 return currentDate.plusWeeks(2);
 
-            case "Monthly":
+            case MONTHLY:
                 return currentDate.plusMonths(1);
 
-            case "Every 3 months":
+            case EVERY_3_MONTHS:
                 return currentDate.plusMonths(3);
 
-            case "Yearly":
+            case YEARLY:
                 return currentDate.plusYears(1);
 
-            case "Before holiday":
+            case BEFORE_HOLIDAY:
                 // For simplicity, assume before major holidays
                 return currentDate.plusYears(1);
 
-            case "After holiday":
+            case AFTER_HOLIDAY:
                 // For simplicity, assume after major holidays
                 return currentDate.plusYears(1);
 
@@ -369,11 +396,11 @@ public class TimelinePanel2 extends JPanel {
         return occurrence;
     }
 
-    private BigDecimal updateBalance(BigDecimal balance, Payment payment) {
-        if ("Debit".equals(payment.getDebitCredit())) {
-            return balance.subtract(payment.getAmountCHF());
-        } else if ("Credit".equals(payment.getDebitCredit())) {
-            return balance.add(payment.getAmountCHF());
+    private long updateBalance(long balance, Payment payment) {
+        if (payment.isDebit()) {
+            return balance - payment.getAmountCHFMinor();
+        } else if (payment.isCredit()) {
+            return balance + payment.getAmountCHFMinor();
         }
         return balance;
     }
@@ -394,7 +421,7 @@ public class TimelinePanel2 extends JPanel {
                     payment.getAmountCHF(),
                     payment.getRecurrence(),
                     paymentManager.getLocationName(payment.getLocationId()),
-                    entry.runningBalance.setScale(2, BigDecimal.ROUND_HALF_UP)
+                    Money.toBigDecimal(entry.runningBalance)
             };
             tableModel.addRow(row);
         }
@@ -406,7 +433,7 @@ public class TimelinePanel2 extends JPanel {
             return;
         }
 
-        BigDecimal finalBalance = entries.get(entries.size() - 1).runningBalance;
+        BigDecimal finalBalance = Money.toBigDecimal(entries.get(entries.size() - 1).runningBalance);
         balanceLabel.setText(String.format("Final Balance: CHF %,.2f",
                 finalBalance.doubleValue()));
     }
@@ -480,9 +507,9 @@ public class TimelinePanel2 extends JPanel {
     // Helper class for timeline entries
     private static class TimelineEntry {
         Payment payment;
-        BigDecimal runningBalance;
+        long runningBalance;
 
-        TimelineEntry(Payment payment, BigDecimal runningBalance) {
+        TimelineEntry(Payment payment, long runningBalance) {
             this.payment = payment;
             this.runningBalance = runningBalance;
         }
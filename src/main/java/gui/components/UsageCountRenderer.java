@@ -0,0 +1,43 @@
+package gui.components;
+
+import java.awt.Component;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JList;
+
+/**
+ * Shows how many payments use each entry of a name combo box, e.g.
+ * "Migros (12)". The count only appears in the open list, so the selected
+ * value still reads as the plain name. Counts are looked up by id, since
+ * two entries may share a name.
+ */
+public class UsageCountRenderer extends DefaultListCellRenderer {
+    // Maps a list index to the id of its entry, or -1 for entries without one
+    private final IntUnaryOperator idAt;
+    private Map<Integer, Integer> counts = new HashMap<>();
+
+    public UsageCountRenderer(IntUnaryOperator idAt) {
+        this.idAt = idAt;
+    }
+
+    /**
+     * Sets the number of payments per id; missing ids count as unused.
+     */
+    public void setCounts(Map<Integer, Integer> counts) {
+        this.counts = counts;
+    }
+
+    @Override
+    public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+            boolean isSelected, boolean cellHasFocus) {
+        Object text = value;
+        int id = value != null && index >= 0 ? idAt.applyAsInt(index) : -1;
+        if (id >= 0) {
+            text = value + " (" + counts.getOrDefault(id, 0) + ")";
+        }
+        return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+    }
+}
@@ -0,0 +1,35 @@
+package models;
+
+/**
+ * Direction of a payment. The label is the value stored in the CSV files.
+ */
+public enum DebitCredit {
+    DEBIT("Debit"),
+    CREDIT("Credit");
+
+    private final String label;
+
+    DebitCredit(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Returns the constant for a stored label, or null for null and unknown
+     * labels. A payment without a direction counts toward neither balance.
+     */
+    public static DebitCredit fromLabel(String label) {
+        if (DEBIT.label.equals(label)) {
+            return DEBIT;
+        }
+        return CREDIT.label.equals(label) ? CREDIT : null;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
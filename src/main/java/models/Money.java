@@ -0,0 +1,39 @@
+package models;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Helpers for amounts held as a long count of minor units (Rappen for CHF).
+ *
+ * Sums over many payments are done on plain longs and only converted back to
+ * BigDecimal when a value is shown or written.
+ */
+public final class Money {
+    public static final int SCALE = 2;
+
+    private Money() {
+    }
+
+    public static long toMinorUnits(BigDecimal amount) {
+        if (amount == null) {
+            return 0;
+        }
+        return amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Converts an amount given as unscaled value and scale without creating
+     * a BigDecimal when it already has two decimals.
+     */
+    public static long toMinorUnits(long unscaledValue, int scale) {
+        if (scale == SCALE) {
+            return unscaledValue;
+        }
+        return toMinorUnits(BigDecimal.valueOf(unscaledValue, scale));
+    }
+
+    public static BigDecimal toBigDecimal(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+}
@@ -10,9 +10,10 @@ public class Payment {
     private BigDecimal amount;
     private String currency;
     private BigDecimal amountCHF;
+    private long amountCHFMinor; // amountCHF in Rappen, used for sums
     private BigDecimal exchangeRate;
-    private String recurrence;
-    private String debitCredit; // "Debit" or "Credit"
+    private Recurrence recurrence;
+    private DebitCredit debitCredit;
     private int locationId;
     private int typeId;
     private LocalDate createdAt;
@@ -29,11 +30,11 @@ public class Payment {
         this.paymentDate = paymentDate;
         this.description = description;
         this.amount = amount;
-        this.currency = currency;
-        this.amountCHF = amountCHF;
+        setCurrency(currency);
+        setAmountCHF(amountCHF);
         this.exchangeRate = exchangeRate;
-        this.recurrence = recurrence;
-        this.debitCredit = debitCredit;
+        setRecurrence(recurrence);
+        setDebitCredit(debitCredit);
         this.locationId = locationId;
         this.typeId = typeId;
     }
@@ -76,7 +77,8 @@ public class Payment {
     }
 
     public void setCurrency(String currency) {
-        this.currency = currency;
+        // Only a handful of codes exist, share one instance per code
+        this.currency = currency != null ? currency.intern() : null;
     }
 
     public BigDecimal getAmountCHF() {
@@ -85,6 +87,11 @@ public class Payment {
 
     public void setAmountCHF(BigDecimal amountCHF) {
         this.amountCHF = amountCHF;
+        this.amountCHFMinor = Money.toMinorUnits(amountCHF);
+    }
+
+    public long getAmountCHFMinor() {
+        return amountCHFMinor;
     }
 
     public BigDecimal getExchangeRate() {
@@ -96,21 +103,45 @@ public class Payment {
     }
 
     public String getRecurrence() {
-        return recurrence;
+        return recurrence != null ? recurrence.getLabel() : null;
     }
 
     public void setRecurrence(String recurrence) {
+        this.recurrence = Recurrence.fromLabel(recurrence);
+    }
+
+    public Recurrence getRecurrenceType() {
+        return recurrence;
+    }
+
+    public void setRecurrenceType(Recurrence recurrence) {
         this.recurrence = recurrence;
     }
 
     public String getDebitCredit() {
-        return debitCredit;
+        return debitCredit != null ? debitCredit.getLabel() : null;
     }
 
     public void setDebitCredit(String debitCredit) {
+        this.debitCredit = DebitCredit.fromLabel(debitCredit);
+    }
+
+    public DebitCredit getDebitCreditType() {
+        return debitCredit;
+    }
+
+    public void setDebitCreditType(DebitCredit debitCredit) {
         this.debitCredit = debitCredit;
     }
 
+    public boolean isDebit() {
+        return debitCredit == DebitCredit.DEBIT;
+    }
+
+    public boolean isCredit() {
+        return debitCredit == DebitCredit.CREDIT;
+    }
+
     public int getLocationId() {
         return locationId;
     }
@@ -0,0 +1,54 @@
+package models;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * How often a payment repeats. The label is the value stored in the CSV
+ * files.
+ */
+public enum Recurrence {
+    ONE_TIME("One-time"),
+    DAILY("Daily"),
+    WEEKLY("Weekly"),
+    EVERY_2_WEEKS("Every 2 weeks"),
+    MONTHLY("Monthly"),
+    EVERY_3_MONTHS("Every 3 months"),
+    YEARLY("Yearly"),
+    BEFORE_HOLIDAY("Before holiday"),
+    AFTER_HOLIDAY("After holiday");
+
+    private static final Map<String, Recurrence> BY_LABEL = new HashMap<>();
+
+    static {
+        for (Recurrence recurrence : values()) {
+            BY_LABEL.put(recurrence.label, recurrence);
+        }
+    }
+
+    private final String label;
+
+    Recurrence(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Returns the constant for a stored label, or null for null and unknown
+     * labels.
+     */
+    public static Recurrence fromLabel(String label) {
+        if (label == null) {
+            return null;
+        }
+        return BY_LABEL.get(label);
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
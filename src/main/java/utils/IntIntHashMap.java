@@ -0,0 +1,74 @@
+package utils;
+
+/**
+ * Open addressing hash map from int keys to int values without boxing.
+ * Missing keys return the {@code missingValue} passed to the constructor.
+ */
+public class IntIntHashMap extends IntKeyHashMap {
+    private final int missingValue;
+    private int[] values;
+
+    public IntIntHashMap(int missingValue) {
+        this(16, missingValue);
+    }
+
+    public IntIntHashMap(int expectedSize, int missingValue) {
+        super(expectedSize);
+        this.missingValue = missingValue;
+        this.values = new int[valueSlots()];
+    }
+
+    public int get(int key) {
+        int index = indexOf(key);
+        return index >= 0 ? values[index] : missingValue;
+    }
+
+    public boolean containsKey(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Associates the value with the key and returns the previous value, or
+     * the missing value if the key was not present.
+     */
+    public int put(int key, int value) {
+        int index = insert(key);
+        if (index < 0) {
+            values[~index] = value;
+            return missingValue;
+        }
+        int previous = values[index];
+        values[index] = value;
+        return previous;
+    }
+
+    /**
+     * Removes the key and returns its value, or the missing value if the key
+     * was not present.
+     */
+    public int remove(int key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return missingValue;
+        }
+        int previous = values[index];
+        removeAt(index);
+        return previous;
+    }
+
+    @Override
+    protected void moveValue(int from, int to) {
+        values[to] = values[from];
+    }
+
+    @Override
+    protected void resizeValues(int length, int[] newIndex) {
+        int[] oldValues = values;
+        values = new int[length];
+        for (int i = 0; i < oldValues.length; i++) {
+            if (newIndex[i] >= 0) {
+                values[newIndex[i]] = oldValues[i];
+            }
+        }
+    }
+}
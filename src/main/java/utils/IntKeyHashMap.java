@@ -0,0 +1,184 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Key side of the open addressing maps with int keys.
+ *
+ * Uses linear probing with backward-shift deletion, so removals leave no
+ * tombstones behind and lookups stay short. Subclasses keep the values in an
+ * array of their own type, indexed like the key slots, with one extra index
+ * at the end for the key 0, which marks free slots.
+ */
+public abstract class IntKeyHashMap {
+    private static final int FREE = 0;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private int[] keys;
+    private boolean hasZeroKey;
+    private int size;
+    private int mask;
+    private int resizeAt;
+
+    protected IntKeyHashMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Length the value array must have.
+     */
+    protected final int valueSlots() {
+        return keys.length + 1;
+    }
+
+    /**
+     * Returns the value index of the key, or -1 if it is not present.
+     */
+    protected final int indexOf(int key) {
+        if (key == FREE) {
+            return hasZeroKey ? keys.length : -1;
+        }
+        int slot = hash(key) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the value index of the key, adding the key if it is not
+     * present. A new key is returned as the complement of its index
+     * ({@code ~index}), so the caller knows to set the value.
+     */
+    protected final int insert(int key) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            return index;
+        }
+        if (key == FREE) {
+            hasZeroKey = true;
+            size++;
+            return ~keys.length;
+        }
+        if (size + 1 > resizeAt) {
+            rehash(keys.length << 1);
+        }
+        int slot = hash(key) & mask;
+        while (keys[slot] != FREE) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        size++;
+        return ~slot;
+    }
+
+    /**
+     * Removes the key at the given value index.
+     */
+    protected final void removeAt(int index) {
+        if (index == keys.length) {
+            hasZeroKey = false;
+        } else {
+            shiftBack(index);
+        }
+        size--;
+    }
+
+    protected final boolean isUsed(int index) {
+        return index == keys.length ? hasZeroKey : keys[index] != FREE;
+    }
+
+    protected final int keyAt(int index) {
+        return index == keys.length ? FREE : keys[index];
+    }
+
+    /**
+     * Moves a value within the value array.
+     */
+    protected abstract void moveValue(int from, int to);
+
+    /**
+     * Replaces the value array with one of the given length, moving the value
+     * at each old index i to {@code newIndex[i]}, unless that is -1.
+     */
+    protected abstract void resizeValues(int length, int[] newIndex);
+
+    // Moves following entries of the probe chain into the freed slot
+    private void shiftBack(int freed) {
+        int slot = freed;
+        while (true) {
+            slot = (slot + 1) & mask;
+            int key = keys[slot];
+            if (key == FREE) {
+                break;
+            }
+            int home = hash(key) & mask;
+            boolean movable = freed <= slot
+                    ? (home <= freed || home > slot)
+                    : (home <= freed && home > slot);
+            if (movable) {
+                keys[freed] = key;
+                moveValue(slot, freed);
+                freed = slot;
+            }
+        }
+        keys[freed] = FREE;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] newIndex = new int[oldKeys.length + 1];
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            int key = oldKeys[i];
+            if (key == FREE) {
+                newIndex[i] = -1;
+                continue;
+            }
+            int slot = hash(key) & mask;
+            while (keys[slot] != FREE) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            newIndex[i] = slot;
+        }
+        newIndex[oldKeys.length] = hasZeroKey ? keys.length : -1;
+        resizeValues(keys.length + 1, newIndex);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        hasZeroKey = false;
+        size = 0;
+    }
+}
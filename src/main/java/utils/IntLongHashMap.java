@@ -0,0 +1,100 @@
+package utils;
+
+/**
+ * Open addressing hash map from int keys to long values without boxing.
+ * Missing keys return the {@code missingValue} passed to the constructor.
+ */
+public class IntLongHashMap extends IntKeyHashMap {
+    private final long missingValue;
+    private long[] values;
+
+    public IntLongHashMap(long missingValue) {
+        this(16, missingValue);
+    }
+
+    public IntLongHashMap(int expectedSize, long missingValue) {
+        super(expectedSize);
+        this.missingValue = missingValue;
+        this.values = new long[valueSlots()];
+    }
+
+    public long get(int key) {
+        int index = indexOf(key);
+        return index >= 0 ? values[index] : missingValue;
+    }
+
+    public boolean containsKey(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Associates the value with the key and returns the previous value, or
+     * the missing value if the key was not present.
+     */
+    public long put(int key, long value) {
+        int index = insert(key);
+        if (index < 0) {
+            values[~index] = value;
+            return missingValue;
+        }
+        long previous = values[index];
+        values[index] = value;
+        return previous;
+    }
+
+    /**
+     * Adds the delta to the value of the key, treating a missing key as zero,
+     * and returns the new value.
+     */
+    public long addTo(int key, long delta) {
+        int index = insert(key);
+        if (index < 0) {
+            values[~index] = delta;
+            return delta;
+        }
+        values[index] += delta;
+        return values[index];
+    }
+
+    /**
+     * Removes the key and returns its value, or the missing value if the key
+     * was not present.
+     */
+    public long remove(int key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return missingValue;
+        }
+        long previous = values[index];
+        removeAt(index);
+        return previous;
+    }
+
+    public void forEach(EntryConsumer action) {
+        for (int i = 0; i < valueSlots(); i++) {
+            if (isUsed(i)) {
+                action.accept(keyAt(i), values[i]);
+            }
+        }
+    }
+
+    @Override
+    protected void moveValue(int from, int to) {
+        values[to] = values[from];
+    }
+
+    @Override
+    protected void resizeValues(int length, int[] newIndex) {
+        long[] oldValues = values;
+        values = new long[length];
+        for (int i = 0; i < oldValues.length; i++) {
+            if (newIndex[i] >= 0) {
+                values[newIndex[i]] = oldValues[i];
+            }
+        }
+    }
+
+    public interface EntryConsumer {
+        void accept(int key, long value);
+    }
+}
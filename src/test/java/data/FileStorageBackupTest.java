@@ -0,0 +1,110 @@
+package data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Backs up and restores the partitioned layout, where payments.csv has been
+ * archived and all payments live under data/payments. Runs in the test
+ * working directory set up by the build.
+ */
+public class FileStorageBackupTest {
+    private static final Path DATA_DIR = Paths.get("data");
+
+    private static String[] payment(String id, String date, String description, String recurrence) {
+        return new String[] { id, date, description, "10.00", "CHF", "10.00", "", recurrence, "Debit", "1", "1",
+                "2024-01-01" };
+    }
+
+    private static List<String> descriptions(String partition) throws IOException {
+        List<String> descriptions = new ArrayList<>();
+        FileStorage.forEachPaymentInPartition(partition, record -> record.get(2), descriptions::add);
+        return descriptions;
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path file : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        FileStorage.savePaymentPartition("2024", Collections.singletonList(
+                payment("1", "2024-02-29", "leap day", "One-time")));
+        FileStorage.savePaymentPartition("recurring", Collections.singletonList(
+                payment("2", "2023-01-01", "rent", "Monthly")));
+        FileStorage.archivePaymentsFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileStorage.updateConfig("backup.compress", "false");
+        FileStorage.deletePaymentPartitions();
+        // Leave the plain layout behind for the other tests
+        Path migrated = DATA_DIR.resolve("payments.csv.migrated");
+        if (Files.exists(migrated)) {
+            Files.move(migrated, DATA_DIR.resolve("payments.csv"), StandardCopyOption.REPLACE_EXISTING);
+        }
+        try (Stream<Path> files = Files.list(DATA_DIR)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith("backup") || name.startsWith("restore.")) {
+                    deleteRecursively(file);
+                }
+            }
+        }
+    }
+
+    private void assertRoundTrip() throws IOException {
+        Path backup = FileStorage.createBackup();
+
+        FileStorage.savePaymentPartition("2024", Collections.singletonList(
+                payment("1", "2024-03-01", "changed", "One-time")));
+        FileStorage.savePaymentPartition("2023", Collections.singletonList(
+                payment("3", "2023-05-05", "added", "One-time")));
+
+        FileStorage.restoreBackup(backup);
+
+        assertEquals(new HashSet<>(Arrays.asList("2024", "recurring")),
+                new HashSet<>(FileStorage.listPaymentPartitions()));
+        assertEquals(Collections.singletonList("leap day"), descriptions("2024"));
+        assertEquals(Collections.singletonList("rent"), descriptions("recurring"));
+        assertFalse(Files.exists(DATA_DIR.resolve("payments.csv")));
+        assertFalse(Files.exists(DATA_DIR.resolve("restore.tmp")));
+        assertFalse(Files.exists(DATA_DIR.resolve("restore.old")));
+    }
+
+    @Test
+    public void restoresPartitionedBackupDirectory() throws IOException {
+        assertRoundTrip();
+    }
+
+    @Test
+    public void restoresPartitionedBackupArchive() throws IOException {
+        FileStorage.updateConfig("backup.compress", "true");
+        assertRoundTrip();
+    }
+}
@@ -0,0 +1,97 @@
+package data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PaymentDateIndexTest {
+    private PaymentDateIndex index;
+
+    @Before
+    public void setUp() {
+        index = new PaymentDateIndex();
+        index.add(1, LocalDate.of(2023, 12, 31));
+        index.add(2, LocalDate.of(2024, 1, 1));
+        index.add(3, LocalDate.of(2024, 1, 31));
+        index.add(4, LocalDate.of(2024, 2, 1));
+        index.add(5, LocalDate.of(2024, 2, 29));
+        index.add(6, LocalDate.of(2024, 3, 1));
+    }
+
+    private List<Integer> range(LocalDate startDate, LocalDate endDate) {
+        List<Integer> ids = new ArrayList<>();
+        index.forEachInRange(startDate, endDate, ids::add);
+        return ids;
+    }
+
+    private List<Integer> month(int year, int month) {
+        List<Integer> ids = new ArrayList<>();
+        index.forEachInMonth(year, month, ids::add);
+        return ids;
+    }
+
+    @Test
+    public void rangeIncludesBothEndDays() {
+        assertEquals(Arrays.asList(5, 4), range(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 29)));
+        assertEquals(Arrays.asList(6, 5, 4, 3), range(LocalDate.of(2024, 1, 31), LocalDate.of(2024, 3, 1)));
+    }
+
+    @Test
+    public void rangeOfOneDay() {
+        assertEquals(Arrays.asList(3), range(LocalDate.of(2024, 1, 31), LocalDate.of(2024, 1, 31)));
+        assertEquals(Arrays.asList(), range(LocalDate.of(2024, 1, 30), LocalDate.of(2024, 1, 30)));
+    }
+
+    @Test
+    public void rangeAcrossYearEnd() {
+        assertEquals(Arrays.asList(2, 1), range(LocalDate.of(2023, 12, 31), LocalDate.of(2024, 1, 1)));
+    }
+
+    @Test
+    public void rangeOutsideData() {
+        assertEquals(Arrays.asList(), range(LocalDate.of(2020, 1, 1), LocalDate.of(2023, 12, 30)));
+        assertEquals(Arrays.asList(), range(LocalDate.of(2024, 3, 2), LocalDate.of(2030, 1, 1)));
+        assertEquals(Arrays.asList(6, 5, 4, 3, 2, 1), range(LocalDate.of(1900, 1, 1), LocalDate.of(2030, 1, 1)));
+    }
+
+    @Test
+    public void reversedRangeIsEmpty() {
+        assertEquals(Arrays.asList(), range(LocalDate.of(2024, 3, 1), LocalDate.of(2024, 1, 1)));
+    }
+
+    @Test
+    public void sameDayIsOrderedByIdNewestFirst() {
+        index.add(9, LocalDate.of(2024, 2, 1));
+        index.add(8, LocalDate.of(2024, 2, 1));
+        assertEquals(Arrays.asList(5, 9, 8, 4), month(2024, 2));
+        assertEquals(Arrays.asList(9, 8, 4), range(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 1)));
+    }
+
+    @Test
+    public void monthBoundaries() {
+        assertEquals(Arrays.asList(3, 2), month(2024, 1));
+        assertEquals(Arrays.asList(1), month(2023, 12));
+        assertEquals(Arrays.asList(), month(2024, 4));
+    }
+
+    @Test
+    public void removeUpdatesQueries() {
+        index.remove(4);
+        index.remove(4);
+        assertEquals(Arrays.asList(5), month(2024, 2));
+        index.remove(1);
+        assertEquals(LocalDate.of(2024, 1, 1), index.getFirstDate());
+        assertEquals(4, index.size());
+
+        index.clear();
+        assertNull(index.getFirstDate());
+        assertEquals(Arrays.asList(), range(LocalDate.of(2023, 1, 1), LocalDate.of(2025, 1, 1)));
+    }
+}
@@ -0,0 +1,116 @@
+package data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PaymentJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path journalFile;
+    private PaymentJournal journal;
+
+    @Before
+    public void setUp() {
+        journalFile = folder.getRoot().toPath().resolve("payments.journal");
+        journal = new PaymentJournal(journalFile, 1024 * 1024);
+    }
+
+    private static String[] record(String operation, String... row) {
+        String[] record = new String[row.length + 1];
+        record[0] = operation;
+        System.arraycopy(row, 0, record, 1, row.length);
+        return record;
+    }
+
+    private List<String[]> replay() throws IOException {
+        List<String[]> records = new ArrayList<>();
+        journal.replay((operation, row) -> records.add(record(operation, row)));
+        return records;
+    }
+
+    @Test
+    public void replayReturnsAppendedRecordsInOrder() throws IOException {
+        String[] add = record(PaymentJournal.ADD, "1", "2024-02-29", "Rent, \"flat\"\nsecond line",
+                "1200.00", "CHF", "1200.00", "1", "Monthly", "Debit", "2", "3", "2024-02-01");
+        String[] update = record(PaymentJournal.UPDATE, "1", "2024-03-01", "", "1250.00", "CHF", "1250.00",
+                "", "Monthly", "Debit", "2", "3", "2024-02-01");
+        String[] delete = record(PaymentJournal.DELETE, "1");
+        journal.append(Arrays.asList(add, update));
+        journal.append(Collections.singletonList(delete));
+
+        List<String[]> replayed = replay();
+        assertEquals(3, replayed.size());
+        assertArrayEquals(add, replayed.get(0));
+        assertArrayEquals(update, replayed.get(1));
+        assertArrayEquals(delete, replayed.get(2));
+    }
+
+    @Test
+    public void replayWithoutJournalDoesNothing() throws IOException {
+        assertTrue(replay().isEmpty());
+        assertFalse(journal.hasRotatedJournal());
+    }
+
+    @Test
+    public void rotatedJournalIsReplayedFirst() throws IOException {
+        journal.append(Collections.singletonList(record(PaymentJournal.ADD, "1", "old")));
+        Files.move(journalFile, journalFile.resolveSibling("payments.journal.compacting"));
+        journal.append(Collections.singletonList(record(PaymentJournal.UPDATE, "1", "new")));
+
+        assertTrue(journal.hasRotatedJournal());
+        List<String[]> replayed = replay();
+        assertEquals(2, replayed.size());
+        assertArrayEquals(record(PaymentJournal.ADD, "1", "old"), replayed.get(0));
+        assertArrayEquals(record(PaymentJournal.UPDATE, "1", "new"), replayed.get(1));
+    }
+
+    @Test
+    public void tornLastRecordIsSkipped() throws IOException {
+        journal.append(Collections.singletonList(record(PaymentJournal.DELETE, "4")));
+        Files.write(journalFile, "UPDATE".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        List<String[]> replayed = replay();
+        assertEquals(1, replayed.size());
+        assertArrayEquals(record(PaymentJournal.DELETE, "4"), replayed.get(0));
+    }
+
+    @Test
+    public void discardRemovesAllJournalFiles() throws IOException {
+        journal.append(Collections.singletonList(record(PaymentJournal.ADD, "1", "old")));
+        Files.move(journalFile, journalFile.resolveSibling("payments.journal.compacting"));
+        journal.append(Collections.singletonList(record(PaymentJournal.ADD, "2", "new")));
+
+        journal.discard();
+        assertFalse(journal.hasRotatedJournal());
+        assertTrue(replay().isEmpty());
+    }
+
+    @Test
+    public void needsCompactionPastThreshold() throws IOException {
+        PaymentJournal small = new PaymentJournal(journalFile, 64);
+        assertFalse(small.needsCompaction());
+        small.append(Collections.singletonList(record(PaymentJournal.ADD, "1", "short")));
+        assertFalse(small.needsCompaction());
+        small.append(Collections.singletonList(
+                record(PaymentJournal.ADD, "2", "a description long enough to pass the threshold")));
+        assertTrue(small.needsCompaction());
+    }
+}
@@ -0,0 +1,124 @@
+package data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import models.Payment;
+
+/**
+ * The date queries the payment list uses for its filters, on payments in a
+ * leap year no other test writes to. Runs in the test working directory set
+ * up by the build.
+ */
+public class PaymentManagerQueryTest {
+    private PaymentManager paymentManager;
+    private final List<Integer> added = new ArrayList<>();
+    private int jan31;
+    private int feb1;
+    private int feb1Later;
+    private int feb29;
+    private int mar1;
+
+    private int add(LocalDate paymentDate) {
+        int id = paymentManager.addPayment(new Payment(paymentDate, "query test", new BigDecimal("10.00"), "CHF",
+                new BigDecimal("10.00"), null, "One-time", "Debit", 1, 1));
+        added.add(id);
+        return id;
+    }
+
+    private static List<Integer> ids(List<Payment> payments) {
+        List<Integer> ids = new ArrayList<>();
+        for (Payment payment : payments) {
+            ids.add(payment.getId());
+        }
+        return ids;
+    }
+
+    @Before
+    public void setUp() {
+        paymentManager = PaymentManager.getInstance();
+        mar1 = add(LocalDate.of(2032, 3, 1));
+        jan31 = add(LocalDate.of(2032, 1, 31));
+        feb29 = add(LocalDate.of(2032, 2, 29));
+        feb1 = add(LocalDate.of(2032, 2, 1));
+        feb1Later = add(LocalDate.of(2032, 2, 1));
+    }
+
+    @After
+    public void tearDown() {
+        for (int id : added) {
+            paymentManager.deletePayment(id);
+        }
+    }
+
+    @Test
+    public void rangeIncludesBothEndDaysNewestFirst() {
+        assertEquals(Arrays.asList(feb29, feb1Later, feb1), ids(paymentManager.getPaymentsByDateRange(
+                LocalDate.of(2032, 2, 1), LocalDate.of(2032, 2, 29))));
+        assertEquals(Arrays.asList(mar1, feb29, feb1Later, feb1, jan31), ids(paymentManager.getPaymentsByDateRange(
+                LocalDate.of(2032, 1, 31), LocalDate.of(2032, 3, 1))));
+    }
+
+    @Test
+    public void rangeOfOneDay() {
+        assertEquals(Arrays.asList(feb1Later, feb1), ids(paymentManager.getPaymentsByDateRange(
+                LocalDate.of(2032, 2, 1), LocalDate.of(2032, 2, 1))));
+    }
+
+    @Test
+    public void rangeBetweenPaymentsIsEmpty() {
+        assertTrue(paymentManager.getPaymentsByDateRange(
+                LocalDate.of(2032, 2, 2), LocalDate.of(2032, 2, 28)).isEmpty());
+    }
+
+    @Test
+    public void reversedRangeIsEmpty() {
+        assertTrue(paymentManager.getPaymentsByDateRange(
+                LocalDate.of(2032, 3, 1), LocalDate.of(2032, 1, 1)).isEmpty());
+    }
+
+    @Test
+    public void monthIncludesLeapDay() {
+        assertEquals(Arrays.asList(feb29, feb1Later, feb1), ids(paymentManager.getPaymentsByMonth(2032, 2)));
+        assertEquals(Arrays.asList(jan31), ids(paymentManager.getPaymentsByMonth(2032, 1)));
+        assertTrue(paymentManager.getPaymentsByMonth(2032, 4).isEmpty());
+    }
+
+    @Test
+    public void queriesFollowChanges() {
+        paymentManager.deletePayment(feb1);
+        Payment moved = paymentManager.getPaymentById(feb29);
+        moved.setPaymentDate(LocalDate.of(2032, 3, 2));
+        paymentManager.updatePayment(moved);
+
+        assertEquals(Arrays.asList(feb1Later), ids(paymentManager.getPaymentsByMonth(2032, 2)));
+        assertEquals(Arrays.asList(feb29, mar1), ids(paymentManager.getPaymentsByMonth(2032, 3)));
+    }
+
+    @Test
+    public void snapshotIsSharedUntilTheNextChange() {
+        PaymentSnapshot snapshot = paymentManager.getSnapshot();
+        assertSame(snapshot, paymentManager.getSnapshot());
+        assertTrue(ids(snapshot.getPayments()).containsAll(added));
+
+        paymentManager.deletePayment(jan31);
+        assertNotEquals(snapshot.getVersion(), paymentManager.getSnapshot().getVersion());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void snapshotCannotBeModified() {
+        paymentManager.getSnapshot().getPayments().remove(0);
+    }
+}
@@ -0,0 +1,133 @@
+package utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IntIntHashMapTest {
+    private static final int MISSING = -1;
+
+    // Keys whose home slot in a table of the given capacity is the given slot
+    private static List<Integer> keysWithHome(int slot, int capacity, int count) {
+        List<Integer> keys = new ArrayList<>();
+        for (int key = 1; keys.size() < count; key++) {
+            if ((IntKeyHashMap.hash(key) & (capacity - 1)) == slot) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    @Test
+    public void putGetAndRemove() {
+        IntIntHashMap map = new IntIntHashMap(MISSING);
+        assertEquals(MISSING, map.put(7, 70));
+        assertEquals(70, map.put(7, 71));
+        assertEquals(71, map.get(7));
+        assertEquals(MISSING, map.get(8));
+        assertEquals(1, map.size());
+
+        assertEquals(71, map.remove(7));
+        assertEquals(MISSING, map.remove(7));
+        assertFalse(map.containsKey(7));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void zeroKeyIsStoredApart() {
+        IntIntHashMap map = new IntIntHashMap(MISSING);
+        map.put(0, 5);
+        map.put(16, 6);
+        assertTrue(map.containsKey(0));
+        assertEquals(5, map.get(0));
+        assertEquals(2, map.size());
+
+        assertEquals(5, map.remove(0));
+        assertFalse(map.containsKey(0));
+        assertEquals(6, map.get(16));
+    }
+
+    @Test
+    public void removeKeepsChainThatWrapsAround() {
+        // Capacity 16: four keys with home slot 14 occupy 14, 15, 0 and 1
+        IntIntHashMap map = new IntIntHashMap(0, MISSING);
+        List<Integer> keys = keysWithHome(14, 16, 4);
+        for (int key : keys) {
+            map.put(key, key * 10);
+        }
+
+        map.remove(keys.get(0));
+        for (int key : keys.subList(1, 4)) {
+            assertEquals(key * 10, map.get(key));
+        }
+        map.remove(keys.get(2));
+        assertEquals(keys.get(1) * 10, map.get(keys.get(1)));
+        assertEquals(keys.get(3) * 10, map.get(keys.get(3)));
+        assertEquals(MISSING, map.get(keys.get(0)));
+        assertEquals(MISSING, map.get(keys.get(2)));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void removeDoesNotMoveKeyBeforeItsHome() {
+        // Slot 15 is home of a, slot 0 of b; c (home 15) lands in slot 1.
+        // Removing a must move c to 15 but leave b in its home slot.
+        IntIntHashMap map = new IntIntHashMap(0, MISSING);
+        int a = keysWithHome(15, 16, 2).get(0);
+        int c = keysWithHome(15, 16, 2).get(1);
+        int b = keysWithHome(0, 16, 1).get(0);
+        map.put(a, 1);
+        map.put(b, 2);
+        map.put(c, 3);
+
+        map.remove(a);
+        assertEquals(2, map.get(b));
+        assertEquals(3, map.get(c));
+        map.remove(b);
+        assertEquals(3, map.get(c));
+    }
+
+    @Test
+    public void growsAndKeepsEntries() {
+        IntIntHashMap map = new IntIntHashMap(0, MISSING);
+        for (int key = -500; key <= 500; key++) {
+            map.put(key, key * 3);
+        }
+        assertEquals(1001, map.size());
+        for (int key = -500; key <= 500; key++) {
+            assertEquals(key * 3, map.get(key));
+        }
+    }
+
+    @Test
+    public void matchesHashMapUnderRandomChanges() {
+        // Few distinct keys in a small table, so removals often hit wrapped chains
+        Random random = new Random(42);
+        IntIntHashMap map = new IntIntHashMap(0, MISSING);
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            int key = random.nextInt(12) * 1_000_003;
+            if (random.nextBoolean()) {
+                int value = random.nextInt(1000);
+                assertEquals((int) expected.getOrDefault(key, MISSING), map.put(key, value));
+                expected.put(key, value);
+            } else {
+                Integer previous = expected.remove(key);
+                assertEquals(previous == null ? MISSING : previous, map.remove(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (int key = 0; key < 12; key++) {
+            int k = key * 1_000_003;
+            assertEquals((int) expected.getOrDefault(k, MISSING), map.get(k));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class IntLongHashMapTest {
+
+    @Test
+    public void addToStartsFromZero() {
+        IntLongHashMap map = new IntLongHashMap(-1L);
+        assertEquals(5L, map.addTo(3, 5L));
+        assertEquals(2L, map.addTo(3, -3L));
+        assertEquals(2L, map.get(3));
+        assertEquals(-1L, map.get(4));
+    }
+
+    @Test
+    public void forEachVisitsEveryEntryIncludingZeroKey() {
+        IntLongHashMap map = new IntLongHashMap(0, 0L);
+        for (int key = 0; key < 100; key++) {
+            map.put(key, key * 1_000_000_000L);
+        }
+        map.remove(50);
+
+        Map<Integer, Long> visited = new HashMap<>();
+        map.forEach(visited::put);
+        assertEquals(99, visited.size());
+        assertEquals(Long.valueOf(0L), visited.get(0));
+        assertEquals(Long.valueOf(99_000_000_000L), visited.get(99));
+        assertFalse(visited.containsKey(50));
+    }
+
+    @Test
+    public void removeKeepsValuesOfShiftedKeys() {
+        IntLongHashMap map = new IntLongHashMap(0, -1L);
+        int[] keys = new int[9];
+        for (int i = 0, key = 1; i < keys.length; key++) {
+            // Home slots 13..15 of a 16 slot table, so the chain wraps
+            if ((IntKeyHashMap.hash(key) & 15) >= 13) {
+                keys[i++] = key;
+            }
+        }
+        for (int key : keys) {
+            map.put(key, key * 7L);
+        }
+        for (int i = 0; i < keys.length; i += 2) {
+            map.remove(keys[i]);
+        }
+        for (int i = 1; i < keys.length; i += 2) {
+            assertEquals(keys[i] * 7L, map.get(keys[i]));
+        }
+        assertEquals(4, map.size());
+    }
+}